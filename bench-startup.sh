@@ -0,0 +1,86 @@
+#!/bin/bash
+# Замер холодного старта и RSS core-service и api-gateway в разных режимах запуска:
+#   jar      - java -jar (как было)
+#   cds      - распакованный jar + AppCDS-архив
+#   cds+aot  - то же + Spring AOT (-Dspring.aot.enabled=true), режим из Dockerfile
+#   native   - если собран нативный образ (./mvnw -Pnative native:compile, нужен GraalVM)
+#
+#   ./bench-startup.sh [RUNS]
+#
+# Время - от запуска процесса до первого HTTP-ответа на порту сервиса; RSS - VmRSS в этот момент.
+# core-service ходит в БД уже после открытия порта (обслуживание секций на ApplicationReadyEvent,
+# первая загрузка AnalyticsEngine в планировщике), поэтому на время до первого ответа Postgres
+# не влияет; без него в логе будут ошибки подключения.
+set -euo pipefail
+
+cd "$(dirname "$0")"
+RUNS="${1:-5}"
+
+now_ms() {
+    date +%s%3N
+}
+
+# $1 - порт, остальное - команда запуска; печатает "<мс> <RSS МБ>"
+measure() {
+    local port="$1"
+    shift
+    local started
+    started=$(now_ms)
+    "$@" > /dev/null 2>&1 &
+    local pid=$!
+    until curl -s -o /dev/null "http://localhost:$port/"; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "process exited before listening on $port" >&2
+            return 1
+        fi
+        sleep 0.01
+    done
+    local elapsed=$(( $(now_ms) - started ))
+    local rss_kb
+    rss_kb=$(awk '/VmRSS/ {print $2}' "/proc/$pid/status")
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    echo "$elapsed $(( rss_kb / 1024 ))"
+}
+
+# $1 - название режима, $2 - порт, остальное - команда; печатает медиану времени и RSS
+bench() {
+    local mode="$1"
+    local port="$2"
+    shift 2
+    local times=()
+    local rss=()
+    for _ in $(seq "$RUNS"); do
+        read -r t r < <(measure "$port" "$@")
+        times+=("$t")
+        rss+=("$r")
+    done
+    local median_time median_rss
+    median_time=$(printf '%s\n' "${times[@]}" | sort -n | sed -n "$(( (RUNS + 1) / 2 ))p")
+    median_rss=$(printf '%s\n' "${rss[@]}" | sort -n | sed -n "$(( (RUNS + 1) / 2 ))p")
+    printf '  %-10s %8s ms %8s MB\n' "$mode" "$median_time" "$median_rss"
+}
+
+for service in core-service:8081 api-gateway:8080; do
+    name="${service%%:*}"
+    port="${service##*:}"
+    jar="$name-0.0.1-SNAPSHOT.jar"
+
+    echo "=== $name (median of $RUNS) ==="
+    (
+        cd "$name"
+        sh ./mvnw -q clean package -DskipTests -Pfast-start
+        java -Djarmode=tools -jar "target/$jar" extract --destination target/app > /dev/null
+        java -XX:ArchiveClassesAtExit=target/app/plain.jsa -Dspring.context.exit=onRefresh \
+            -jar "target/app/$jar" > /dev/null 2>&1
+        java -XX:ArchiveClassesAtExit=target/app/aot.jsa -Dspring.aot.enabled=true -Dspring.context.exit=onRefresh \
+            -jar "target/app/$jar" > /dev/null 2>&1
+
+        bench jar "$port" java -jar "target/$jar"
+        bench cds "$port" java -XX:SharedArchiveFile=target/app/plain.jsa -jar "target/app/$jar"
+        bench cds+aot "$port" java -XX:SharedArchiveFile=target/app/aot.jsa -Dspring.aot.enabled=true -jar "target/app/$jar"
+        if [ -x "target/$name" ]; then
+            bench native "$port" "target/$name"
+        fi
+    )
+done
@@ -0,0 +1,879 @@
+package com.example.core_service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Необязательный аналитический движок в памяти (analytics.enabled).
+ * Держит sales_to_companies и work_shifts/shift_production в колоночном виде
+ * (SalesColumns, ProductionColumns), поддерживается в актуальном состоянии из путей записи
+ * DbController и периодически перечитывается целиком. Отвечает на sales-by-mineral,
+ * buyer-statistics, monthly-production, team-efficiency и view_mineral_prices параллельной агрегацией;
+ * на все остальное (и пока данные не загружены) возвращает null - запрос идет в Postgres.
+ * Изменения в обход DbController (TRUNCATE, отсоединение и удаление секций) замечаются по каталогу
+ * и вызывают полную перезагрузку; до ее окончания отчеты считает Postgres.
+ *
+ * Тонны хранятся с 3 знаками, цены с 2. Значения с большей точностью не округляются: движок
+ * посчитал бы иначе, чем Postgres, поэтому он выключается до следующей загрузки и отчеты считает Postgres.
+ */
+@Component
+public class AnalyticsEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsEngine.class);
+
+    private static final int LOAD_CHUNK = 100_000;
+
+    // Таблицы движка и их секции: TRUNCATE меняет relfilenode, отсоединение и удаление - состав секций
+    private static final String STORAGE_SQL = """
+            WITH t AS (
+                SELECT to_regclass(name) AS oid
+                FROM unnest(ARRAY['sales_to_companies', 'work_shifts', 'shift_production',
+                                  'minerals', 'ore_deposits', 'buyers_companies']) name
+            )
+            SELECT COALESCE(string_agg(c.oid || ':' || c.relfilenode, ',' ORDER BY c.oid), '')
+            FROM pg_class c
+            WHERE c.oid IN (SELECT oid FROM t)
+               OR c.oid IN (SELECT i.inhrelid FROM pg_inherits i WHERE i.inhparent IN (SELECT oid FROM t))
+            """;
+
+    // Пустая мера (смена без добычи / минерал NULL в LEFT JOIN)
+    private static final int NO_MINERAL = 0;
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile boolean ready;
+    // Данные изменены в обход DbController, нужна полная перезагрузка
+    private volatile boolean stale;
+    // Снимок каталога на момент последней загрузки
+    private volatile String loadedStorage;
+    private SalesColumns sales = new SalesColumns();
+    private ProductionColumns production = new ProductionColumns();
+    private Map<Integer, String> minerals = Map.of();
+    private Map<Integer, String> deposits = Map.of();
+    private Map<Integer, String[]> buyers = Map.of();
+    private Teams teams = Teams.EMPTY;
+
+    // Записи, пришедшие во время полной перезагрузки: после подмены хранилищ применяются повторно
+    private boolean reloading;
+    private final Set<Change> pending = ConcurrentHashMap.newKeySet();
+
+    // Чтение и применение одной строки - под замком (таблица, id): иначе две записи одной строки,
+    // перечитанные в одном порядке, могли бы примениться в обратном
+    private final Object[] applyLocks = new Object[64];
+
+    @Value("${analytics.enabled:false}")
+    private boolean enabled;
+
+    public AnalyticsEngine(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+        for (int i = 0; i < applyLocks.length; i++) {
+            applyLocks[i] = new Object();
+        }
+    }
+
+    private record Change(String table, int id) {
+    }
+
+    /**
+     * Бригады для team-efficiency: mining_teams JOIN teams JOIN team_names.
+     * Группа - пара (название, бригадир), как в GROUP BY отчета; groupById[id] = -1 - бригады нет в JOIN.
+     */
+    private record Teams(int[] groupById, List<String[]> groups) {
+        static final Teams EMPTY = new Teams(new int[0], List.of());
+
+        int groupOf(int teamId) {
+            return teamId > 0 && teamId < groupById.length ? groupById[teamId] : -1;
+        }
+    }
+
+    // --- Загрузка ---
+
+    // Первая загрузка сразу после старта (в потоке планировщика, старт не блокируется), затем периодически
+    @Scheduled(initialDelay = 0, fixedDelayString = "${analytics.refresh-interval-ms:1800000}")
+    public synchronized void reload() {
+        if (!enabled) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            reloading = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long started = System.nanoTime();
+        SalesColumns newSales = new SalesColumns();
+        ProductionColumns newProduction = new ProductionColumns();
+        Map<Integer, String> newMinerals;
+        Map<Integer, String> newDeposits;
+        Map<Integer, String[]> newBuyers;
+        Teams newTeams;
+        String storage;
+        try {
+            // Снимок до чтения данных: изменение во время загрузки заметит следующая проверка
+            stale = false;
+            storage = storageSnapshot();
+            newMinerals = loadNames("minerals");
+            newDeposits = loadNames("ore_deposits");
+            newBuyers = loadBuyers();
+            newTeams = loadTeams();
+            loadSales(newSales);
+            loadShifts(newProduction);
+            loadProduction(newProduction);
+        } catch (ArithmeticException e) {
+            log.warn("Analytics disabled until the next reload, reports stay on the database: {}", e.getMessage());
+            ready = false;
+            endReload();
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Analytics load failed, reports stay on the database: {}", e.getMessage());
+            endReload();
+            return;
+        }
+
+        List<Change> replay;
+        lock.writeLock().lock();
+        try {
+            sales = newSales;
+            production = newProduction;
+            minerals = newMinerals;
+            deposits = newDeposits;
+            buyers = newBuyers;
+            teams = newTeams;
+            reloading = false;
+            replay = new ArrayList<>(pending);
+            pending.clear();
+            loadedStorage = storage;
+            ready = !stale;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        replay.forEach(c -> apply(c.table(), c.id()));
+
+        log.info("Analytics loaded {} sales, {} shifts, {} production rows in {} ms",
+                newSales.size, newProduction.maxShiftId, newProduction.size, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void endReload() {
+        lock.writeLock().lock();
+        try {
+            reloading = false;
+            pending.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Дешевая проверка каталога; при расхождении - полная перезагрузка
+    @Scheduled(initialDelayString = "${analytics.storage-check-interval-ms:60000}",
+            fixedDelayString = "${analytics.storage-check-interval-ms:60000}")
+    public void checkStorage() {
+        if (!enabled || loadedStorage == null) {
+            return;
+        }
+        if (!stale) {
+            try {
+                if (storageSnapshot().equals(loadedStorage)) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Analytics storage check failed: {}", e.getMessage());
+                return;
+            }
+            log.info("Analytics tables changed outside the API, reloading");
+        }
+        ready = false;
+        reload();
+    }
+
+    /**
+     * Данные изменены в обход DbController (например, PartitionManager отсоединил секции):
+     * отчеты сразу уходят в Postgres, перезагрузка - при следующей проверке.
+     */
+    public void invalidate() {
+        if (!enabled) {
+            return;
+        }
+        stale = true;
+        ready = false;
+    }
+
+    private String storageSnapshot() {
+        return jdbc.queryForObject(STORAGE_SQL, new MapSqlParameterSource(), String.class);
+    }
+
+    /**
+     * Вызывается DbController после успешной записи в таблицу: строка перечитывается из БД
+     * (с учетом значений по умолчанию и каскадов) и применяется к хранилищу.
+     */
+    public void onWrite(String table, Number id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        switch (table) {
+            case "sales_to_companies", "work_shifts", "shift_production",
+                 "minerals", "ore_deposits", "buyers_companies",
+                 "mining_teams", "teams", "team_names" -> {
+                lock.writeLock().lock();
+                try {
+                    if (reloading) {
+                        pending.add(new Change(table, id.intValue()));
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                apply(table, id.intValue());
+            }
+            default -> {
+                // Таблица не участвует в отчетах движка
+            }
+        }
+    }
+
+    private void apply(String table, int id) {
+        // Справочники перечитываются целиком - один замок на таблицу
+        int key = switch (table) {
+            case "minerals", "ore_deposits", "buyers_companies" -> table.hashCode();
+            // Три таблицы одного справочника бригад
+            case "mining_teams", "teams", "team_names" -> "mining_teams".hashCode();
+            default -> table.hashCode() * 31 + id;
+        };
+        synchronized (applyLocks[Math.floorMod(key, applyLocks.length)]) {
+            try {
+                applyRow(table, id);
+            } catch (ArithmeticException e) {
+                // Запись в БД уже прошла; строку движок хранить не может - до перезагрузки отвечает Postgres
+                log.warn("Analytics disabled until the next reload, reports stay on the database: {}", e.getMessage());
+                ready = false;
+            }
+        }
+    }
+
+    private void applyRow(String table, int id) {
+        MapSqlParameterSource params = new MapSqlParameterSource("id", id);
+        switch (table) {
+            case "sales_to_companies" -> {
+                List<long[]> rows = jdbc.query(SALES_SQL + " WHERE id = :id", params, (rs, n) -> salesRow(rs));
+                lock.writeLock().lock();
+                try {
+                    if (rows.isEmpty()) {
+                        sales.remove(id);
+                    } else {
+                        long[] r = rows.get(0);
+                        sales.upsert(id, (int) r[1], (int) r[2], (int) r[3], r[4], r[5]);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            case "work_shifts" -> {
+                List<int[]> rows = jdbc.query(SHIFTS_SQL + " WHERE id = :id", params, (rs, n) -> shiftRow(rs));
+                lock.writeLock().lock();
+                try {
+                    if (rows.isEmpty()) {
+                        production.removeShift(id);
+                    } else {
+                        production.upsertShift(id, rows.get(0)[1], rows.get(0)[2], rows.get(0)[3]);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            case "shift_production" -> {
+                List<long[]> rows = jdbc.query(PRODUCTION_SQL + " WHERE id = :id", params, (rs, n) -> productionRow(rs));
+                lock.writeLock().lock();
+                try {
+                    if (rows.isEmpty()) {
+                        production.removeProduction(id);
+                    } else {
+                        long[] r = rows.get(0);
+                        production.upsertProduction(id, (int) r[1], (int) r[2], r[3], r[4] != 0);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            // Справочники маленькие - перечитываются целиком
+            case "minerals", "ore_deposits" -> {
+                Map<Integer, String> names = loadNames(table);
+                lock.writeLock().lock();
+                try {
+                    if (table.equals("minerals")) {
+                        minerals = names;
+                    } else {
+                        deposits = names;
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            case "buyers_companies" -> {
+                Map<Integer, String[]> loaded = loadBuyers();
+                lock.writeLock().lock();
+                try {
+                    buyers = loaded;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            case "mining_teams", "teams", "team_names" -> {
+                Teams loaded = loadTeams();
+                lock.writeLock().lock();
+                try {
+                    teams = loaded;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static final String SALES_SQL =
+            "SELECT id, mineral_id, buyer_id, sale_date, sold_tons, sale_price_per_ton FROM sales_to_companies";
+    private static final String SHIFTS_SQL =
+            "SELECT id, shift_date, ore_deposit_id, mining_team_id FROM work_shifts";
+    private static final String PRODUCTION_SQL =
+            "SELECT id, shift_id, mineral_id, tons_of_ore, equipment_damaged FROM shift_production";
+
+    private long[] salesRow(ResultSet rs) throws SQLException {
+        return new long[] {
+                rs.getInt("id"),
+                rs.getInt("mineral_id"),
+                rs.getInt("buyer_id"),
+                rs.getObject("sale_date", LocalDate.class).toEpochDay(),
+                scaled(rs, "sold_tons", SalesColumns.TONS_SCALE),
+                scaled(rs, "sale_price_per_ton", SalesColumns.PRICE_SCALE)
+        };
+    }
+
+    private int[] shiftRow(ResultSet rs) throws SQLException {
+        return new int[] {
+                rs.getInt("id"),
+                (int) rs.getObject("shift_date", LocalDate.class).toEpochDay(),
+                rs.getInt("ore_deposit_id"),
+                rs.getInt("mining_team_id")
+        };
+    }
+
+    private long[] productionRow(ResultSet rs) throws SQLException {
+        return new long[] {
+                rs.getInt("id"),
+                rs.getInt("shift_id"),
+                rs.getInt("mineral_id"),
+                scaled(rs, "tons_of_ore", ProductionColumns.TONS_SCALE),
+                rs.getBoolean("equipment_damaged") ? 1 : 0
+        };
+    }
+
+    // Без округления: значение, не помещающееся в scale знаков (или в long), - ArithmeticException
+    private static long scaled(ResultSet rs, String column, int scale) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(column);
+        try {
+            return value.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException(column + " = " + value + " (id " + rs.getInt("id")
+                    + ") does not fit " + scale + " decimal places");
+        }
+    }
+
+    private void loadSales(SalesColumns target) {
+        loadChunked(SALES_SQL, rs -> {
+            long[] r = salesRow(rs);
+            target.upsert((int) r[0], (int) r[1], (int) r[2], (int) r[3], r[4], r[5]);
+        });
+    }
+
+    private void loadShifts(ProductionColumns target) {
+        loadChunked(SHIFTS_SQL, rs -> {
+            int[] r = shiftRow(rs);
+            target.upsertShift(r[0], r[1], r[2], r[3]);
+        });
+    }
+
+    private void loadProduction(ProductionColumns target) {
+        loadChunked(PRODUCTION_SQL, rs -> {
+            long[] r = productionRow(rs);
+            target.upsertProduction((int) r[0], (int) r[1], (int) r[2], r[3], r[4] != 0);
+        });
+    }
+
+    // Постраничное чтение по id: с autocommit драйвер иначе держал бы в памяти весь результат
+    private void loadChunked(String select, RowCallbackHandler handler) {
+        String sql = select + " WHERE id > :after ORDER BY id LIMIT " + LOAD_CHUNK;
+        int[] after = {0};
+        int[] count = new int[1];
+        do {
+            count[0] = 0;
+            jdbc.query(sql, new MapSqlParameterSource("after", after[0]), (RowCallbackHandler) rs -> {
+                handler.processRow(rs);
+                after[0] = rs.getInt("id");
+                count[0]++;
+            });
+        } while (count[0] == LOAD_CHUNK);
+    }
+
+    private Map<Integer, String> loadNames(String table) {
+        Map<Integer, String> names = new LinkedHashMap<>();
+        jdbc.query("SELECT id, name FROM " + table + " ORDER BY id", new MapSqlParameterSource(),
+                (RowCallbackHandler) rs -> names.put(rs.getInt("id"), rs.getString("name")));
+        return names;
+    }
+
+    private Map<Integer, String[]> loadBuyers() {
+        Map<Integer, String[]> result = new LinkedHashMap<>();
+        jdbc.query("SELECT id, name, contact_name, contact_phone FROM buyers_companies ORDER BY id", new MapSqlParameterSource(),
+                (RowCallbackHandler) rs -> result.put(rs.getInt("id"),
+                        new String[] {rs.getString("name"), rs.getString("contact_name"), rs.getString("contact_phone")}));
+        return result;
+    }
+
+    private Teams loadTeams() {
+        String sql = """
+                SELECT mt.id, tn.name, mt.foreman_name
+                FROM mining_teams mt
+                JOIN teams t ON mt.team_id = t.id
+                JOIN team_names tn ON t.name_id = tn.id
+                ORDER BY mt.id
+                """;
+        Map<List<String>, Integer> groupIndex = new HashMap<>();
+        List<String[]> groups = new ArrayList<>();
+        Map<Integer, Integer> groupById = new HashMap<>();
+        jdbc.query(sql, new MapSqlParameterSource(), (RowCallbackHandler) rs -> {
+            String name = rs.getString("name");
+            String foreman = rs.getString("foreman_name");
+            // Arrays.asList допускает NULL бригадира - в GROUP BY это тоже отдельная группа
+            Integer group = groupIndex.computeIfAbsent(Arrays.asList(name, foreman), k -> {
+                groups.add(new String[] {name, foreman});
+                return groups.size() - 1;
+            });
+            groupById.put(rs.getInt("id"), group);
+        });
+        int maxId = groupById.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+        int[] byId = new int[maxId + 1];
+        Arrays.fill(byId, -1);
+        groupById.forEach((id, group) -> byId[id] = group);
+        return new Teams(byId, groups);
+    }
+
+    // --- Запросы ---
+
+    /** Отчет из памяти или null, если его должен выполнить Postgres. */
+    public List<Map<String, Object>> report(String report, String from, String to, Integer year, Integer month) {
+        if (!enabled || !ready) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return switch (report) {
+                case "sales-by-mineral" -> salesByMineral(from, to);
+                case "buyer-statistics" -> buyerStatistics(from, to);
+                case "monthly-production" -> monthlyProduction(year, month);
+                case "team-efficiency" -> teamEfficiency(year, month);
+                default -> null;
+            };
+        } catch (DateTimeException | ArithmeticException e) {
+            // Нестандартный формат даты или переполнение - пусть считает БД
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Представление из памяти или null. */
+    public List<Map<String, Object>> view(String view) {
+        if (!enabled || !ready || !"view_mineral_prices".equals(view)) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return mineralPrices();
+        } catch (ArithmeticException e) {
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Map<String, Object>> salesByMineral(String from, String to) {
+        boolean bounded = from != null && to != null;
+        int fromDay = bounded ? (int) LocalDate.parse(from).toEpochDay() : Integer.MIN_VALUE;
+        int toDay = bounded ? (int) LocalDate.parse(to).toEpochDay() : Integer.MAX_VALUE;
+        SalesColumns s = sales;
+
+        GroupTable groups = ParallelScan.aggregate(0, s.size, (row, g) -> {
+            int day = s.day[row];
+            if (day < fromDay || day > toDay) {
+                return;
+            }
+            addSale(g.get(s.mineral[row]), s, row);
+        });
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        groups.forEach((mineralId, acc) -> {
+            String name = minerals.get((int) mineralId);
+            if (name == null) {
+                return;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("mineral_name", name);
+            row.put("sales_count", acc.count);
+            row.put("total_sold_tons", decimal(acc.sumTons, SalesColumns.TONS_SCALE));
+            row.put("avg_price", average(acc.sumPrice, SalesColumns.PRICE_SCALE, acc.count));
+            row.put("total_revenue", revenue(acc));
+            row.put("first_sale_date", date(acc.minDay));
+            row.put("last_sale_date", date(acc.maxDay));
+            result.add(row);
+        });
+        result.sort(Comparator.comparing((Map<String, Object> r) -> (BigDecimal) r.get("total_revenue")).reversed());
+        return result;
+    }
+
+    // LEFT JOIN от покупателей: без фильтра - все; с фильтром - у кого есть продажи в периоде или нет продаж вовсе
+    private List<Map<String, Object>> buyerStatistics(String from, String to) {
+        boolean bounded = from != null && to != null;
+        int fromDay = bounded ? (int) LocalDate.parse(from).toEpochDay() : Integer.MIN_VALUE;
+        int toDay = bounded ? (int) LocalDate.parse(to).toEpochDay() : Integer.MAX_VALUE;
+        SalesColumns s = sales;
+
+        GroupTable groups = ParallelScan.aggregate(0, s.size, (row, g) -> {
+            GroupTable.Acc acc = g.get(s.buyer[row]);
+            acc.valueCount++;
+            int day = s.day[row];
+            if (day >= fromDay && day <= toDay) {
+                addSale(acc, s, row);
+            }
+        });
+        Map<Integer, GroupTable.Acc> byBuyer = new HashMap<>();
+        groups.forEach((buyerId, acc) -> byBuyer.put((int) buyerId, acc));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<Integer, String[]> buyer : buyers.entrySet()) {
+            GroupTable.Acc acc = byBuyer.get(buyer.getKey());
+            if (acc == null) {
+                acc = new GroupTable.Acc();
+            } else if (acc.count == 0) {
+                continue;
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("company_name", buyer.getValue()[0]);
+            row.put("contact_name", buyer.getValue()[1]);
+            row.put("contact_phone", buyer.getValue()[2]);
+            row.put("purchase_count", acc.count);
+            row.put("total_purchased_tons", decimal(acc.sumTons, SalesColumns.TONS_SCALE));
+            row.put("total_spent", revenue(acc));
+            row.put("avg_price_paid", average(acc.sumPrice, SalesColumns.PRICE_SCALE, acc.count));
+            row.put("first_purchase_date", date(acc.minDay));
+            row.put("last_purchase_date", date(acc.maxDay));
+            result.add(row);
+        }
+        result.sort(Comparator.comparing((Map<String, Object> r) -> (BigDecimal) r.get("total_spent")).reversed());
+        return result;
+    }
+
+    private List<Map<String, Object>> mineralPrices() {
+        SalesColumns s = sales;
+        GroupTable groups = ParallelScan.aggregate(0, s.size, (row, g) -> {
+            GroupTable.Acc acc = g.get(s.mineral[row]);
+            addSale(acc, s, row);
+            acc.minPrice = Math.min(acc.minPrice, s.price[row]);
+            acc.maxPrice = Math.max(acc.maxPrice, s.price[row]);
+            if (acc.buyers == null) {
+                acc.buyers = new BitSet();
+            }
+            acc.buyers.set(s.buyer[row]);
+        });
+        Map<Integer, GroupTable.Acc> byMineral = new HashMap<>();
+        groups.forEach((mineralId, acc) -> byMineral.put((int) mineralId, acc));
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<Integer, String> mineral : minerals.entrySet()) {
+            GroupTable.Acc acc = byMineral.get(mineral.getKey());
+            boolean any = acc != null && acc.count > 0;
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", mineral.getKey());
+            row.put("mineral_name", mineral.getValue());
+            row.put("avg_price_per_ton", any ? average(acc.sumPrice, SalesColumns.PRICE_SCALE, acc.count) : null);
+            row.put("min_price_per_ton", any ? decimal(acc.minPrice, SalesColumns.PRICE_SCALE) : null);
+            row.put("max_price_per_ton", any ? decimal(acc.maxPrice, SalesColumns.PRICE_SCALE) : null);
+            row.put("total_sold_volume", any ? decimal(acc.sumTons, SalesColumns.TONS_SCALE) : null);
+            row.put("number_of_buyers", any ? (long) acc.buyers.cardinality() : 0L);
+            result.add(row);
+        }
+        result.sort(Comparator.comparing((Map<String, Object> r) -> (String) r.get("mineral_name")));
+        return result;
+    }
+
+    private static void addSale(GroupTable.Acc acc, SalesColumns s, int row) {
+        acc.count++;
+        acc.sumTons = Math.addExact(acc.sumTons, s.tons[row]);
+        acc.sumPrice = Math.addExact(acc.sumPrice, s.price[row]);
+        acc.addRevenue(Math.multiplyExact(s.tons[row], s.price[row]));
+        acc.minDay = Math.min(acc.minDay, s.day[row]);
+        acc.maxDay = Math.max(acc.maxDay, s.day[row]);
+    }
+
+    /*
+     * work_shifts JOIN ore_deposits LEFT JOIN shift_production: каждая строка добычи - строка результата,
+     * смена без добычи - одна строка с пустым минералом. Ключ группы: месторождение | месяц | минерал.
+     */
+    private List<Map<String, Object>> monthlyProduction(Integer year, Integer month) {
+        boolean byMonth = year != null && month != null;
+        boolean byYear = year != null && month == null;
+        int fromDay;
+        int toDay;
+        if (byMonth) {
+            YearMonth ym = YearMonth.of(year, month);
+            fromDay = (int) ym.atDay(1).toEpochDay();
+            toDay = (int) ym.atEndOfMonth().toEpochDay();
+        } else if (byYear) {
+            fromDay = (int) LocalDate.of(year, 1, 1).toEpochDay();
+            toDay = (int) LocalDate.of(year, 12, 31).toEpochDay();
+        } else {
+            fromDay = Integer.MIN_VALUE;
+            toDay = Integer.MAX_VALUE;
+        }
+        // Группировка: за месяц - (месторождение, минерал), за год - (месторождение, месяц), без фильтра - все три
+        boolean keyMonth = !byMonth;
+        boolean keyMineral = !byYear;
+        ProductionColumns p = production;
+
+        GroupTable groups = ParallelScan.aggregate(0, p.size, (row, g) -> {
+            int shiftId = p.shift[row];
+            if (!p.hasShift(shiftId)) {
+                return;
+            }
+            int day = p.shiftDay[shiftId];
+            if (day < fromDay || day > toDay) {
+                return;
+            }
+            GroupTable.Acc acc = g.get(productionKey(p.shiftDeposit[shiftId], keyMonth ? monthIndex(day) : 0, keyMineral ? p.mineral[row] : NO_MINERAL));
+            acc.count++;
+            acc.valueCount++;
+            acc.sumTons = Math.addExact(acc.sumTons, p.tons[row]);
+        });
+        GroupTable emptyShifts = ParallelScan.aggregate(1, p.maxShiftId + 1, (shiftId, g) -> {
+            if (!p.shiftPresent[shiftId] || p.shiftProductionCount[shiftId] > 0) {
+                return;
+            }
+            int day = p.shiftDay[shiftId];
+            if (day < fromDay || day > toDay) {
+                return;
+            }
+            g.get(productionKey(p.shiftDeposit[shiftId], keyMonth ? monthIndex(day) : 0, NO_MINERAL)).count++;
+        });
+        groups.mergeFrom(emptyShifts);
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        groups.forEach((key, acc) -> {
+            String deposit = deposits.get((int) (key >>> 32));
+            if (deposit == null) {
+                return;
+            }
+            int monthIndex = (int) ((key >>> 20) & 0xFFF);
+            int mineralId = (int) (key & 0xFFFFF);
+            BigDecimal total = decimal(acc.sumTons, ProductionColumns.TONS_SCALE);
+            BigDecimal avg = average(acc.sumTons, ProductionColumns.TONS_SCALE, acc.valueCount);
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("deposit_name", deposit);
+            if (byMonth) {
+                row.put("mineral_name", minerals.get(mineralId));
+                row.put("shifts_count", acc.count);
+                row.put("total_production", total);
+                row.put("avg_production_per_shift", avg);
+            } else if (byYear) {
+                row.put("month", BigDecimal.valueOf(monthIndex % 12 + 1));
+                row.put("total_production", total);
+                row.put("shifts_count", acc.count);
+            } else {
+                row.put("mineral_name", minerals.get(mineralId));
+                row.put("year", BigDecimal.valueOf(1900 + monthIndex / 12));
+                row.put("month_number", BigDecimal.valueOf(monthIndex % 12 + 1));
+                row.put("shifts_count", acc.count);
+                row.put("total_production", total);
+                row.put("avg_production", avg);
+            }
+            result.add(row);
+        });
+
+        Comparator<Map<String, Object>> byTotalDesc =
+                Comparator.comparing((Map<String, Object> r) -> (BigDecimal) r.get("total_production")).reversed();
+        if (byMonth) {
+            result.sort(byTotalDesc);
+        } else if (byYear) {
+            result.sort(Comparator.comparing((Map<String, Object> r) -> (BigDecimal) r.get("month")).thenComparing(byTotalDesc));
+        } else {
+            result.sort(Comparator.comparing((Map<String, Object> r) -> (BigDecimal) r.get("year"))
+                    .thenComparing(r -> (BigDecimal) r.get("month_number")).reversed());
+        }
+        return result;
+    }
+
+    /*
+     * mining_teams JOIN teams JOIN team_names JOIN work_shifts LEFT JOIN shift_production.
+     * Группа: (бригада, бригадир), без фильтра - еще и месяц. Рабочие дни - маска дней месяца:
+     * группа никогда не выходит за один месяц.
+     */
+    private List<Map<String, Object>> teamEfficiency(Integer year, Integer month) {
+        boolean byMonth = year != null && month != null;
+        int fromDay;
+        int toDay;
+        if (byMonth) {
+            YearMonth ym = YearMonth.of(year, month);
+            fromDay = (int) ym.atDay(1).toEpochDay();
+            toDay = (int) ym.atEndOfMonth().toEpochDay();
+        } else {
+            fromDay = Integer.MIN_VALUE;
+            toDay = Integer.MAX_VALUE;
+        }
+        ProductionColumns p = production;
+        Teams t = teams;
+
+        GroupTable groups = ParallelScan.aggregate(0, p.size, (row, g) -> {
+            int shiftId = p.shift[row];
+            if (!p.hasShift(shiftId)) {
+                return;
+            }
+            GroupTable.Acc acc = teamShift(g, p, t, shiftId, fromDay, toDay, byMonth);
+            if (acc == null) {
+                return;
+            }
+            acc.valueCount++;
+            acc.sumTons = Math.addExact(acc.sumTons, p.tons[row]);
+            if (p.damaged[row]) {
+                acc.flagged++;
+            }
+        });
+        GroupTable emptyShifts = ParallelScan.aggregate(1, p.maxShiftId + 1, (shiftId, g) -> {
+            if (p.shiftPresent[shiftId] && p.shiftProductionCount[shiftId] == 0) {
+                teamShift(g, p, t, shiftId, fromDay, toDay, byMonth);
+            }
+        });
+        groups.mergeFrom(emptyShifts);
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        groups.forEach((key, acc) -> {
+            String[] team = t.groups().get((int) (key >>> 32));
+            int monthIndex = (int) key;
+            long workingDays = Long.bitCount(acc.dayMask);
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("team_name", team[0]);
+            row.put("foreman_name", team[1]);
+            if (!byMonth) {
+                row.put("year", BigDecimal.valueOf(1900 + Math.floorDiv(monthIndex, 12)));
+                row.put("month", BigDecimal.valueOf(Math.floorMod(monthIndex, 12) + 1));
+            }
+            row.put("working_days", workingDays);
+            row.put("total_production", decimal(acc.sumTons, ProductionColumns.TONS_SCALE));
+            row.put("avg_daily_production", acc.valueCount == 0
+                    ? BigDecimal.ZERO
+                    : average(acc.sumTons, ProductionColumns.TONS_SCALE, workingDays));
+            row.put("avg_shift_production", average(acc.sumTons, ProductionColumns.TONS_SCALE, acc.valueCount));
+            row.put("incidents_count", acc.flagged);
+            result.add(row);
+        });
+
+        Comparator<Map<String, Object>> byTotalDesc =
+                Comparator.comparing((Map<String, Object> r) -> (BigDecimal) r.get("total_production")).reversed();
+        if (byMonth) {
+            result.sort(byTotalDesc);
+        } else {
+            result.sort(Comparator.comparing((Map<String, Object> r) -> (BigDecimal) r.get("year"))
+                    .thenComparing(r -> (BigDecimal) r.get("month")).reversed()
+                    .thenComparing(byTotalDesc));
+        }
+        return result;
+    }
+
+    // Строка смены в группе ее бригады; null - смена вне периода или бригады нет в JOIN
+    private static GroupTable.Acc teamShift(GroupTable g, ProductionColumns p, Teams t, int shiftId,
+                                            int fromDay, int toDay, boolean byMonth) {
+        int day = p.shiftDay[shiftId];
+        if (day < fromDay || day > toDay) {
+            return null;
+        }
+        int group = t.groupOf(p.shiftTeam[shiftId]);
+        if (group < 0) {
+            return null;
+        }
+        LocalDate date = LocalDate.ofEpochDay(day);
+        long key = ((long) group << 32) | (byMonth ? 0 : monthIndex(date) & 0xFFFFFFFFL);
+        GroupTable.Acc acc = g.get(key);
+        acc.count++;
+        acc.dayMask |= 1L << date.getDayOfMonth();
+        return acc;
+    }
+
+    // Номер месяца от 1900-01
+    private static int monthIndex(int epochDay) {
+        return monthIndex(LocalDate.ofEpochDay(epochDay));
+    }
+
+    private static int monthIndex(LocalDate date) {
+        return (date.getYear() - 1900) * 12 + date.getMonthValue() - 1;
+    }
+
+    // месторождение (32 бита) | месяц (12 бит) | минерал (20 бит)
+    private static long productionKey(int depositId, int monthIndex, int mineralId) {
+        if (monthIndex < 0 || monthIndex > 0xFFF || mineralId < 0 || mineralId > 0xFFFFF) {
+            throw new ArithmeticException("Group key out of range");
+        }
+        return ((long) depositId << 32) | ((long) monthIndex << 20) | mineralId;
+    }
+
+    // --- Форматирование как у Postgres ---
+
+    // Без хвостовых нулей, но не в экспоненциальной записи
+    private static BigDecimal decimal(long unscaled, int scale) {
+        BigDecimal value = BigDecimal.valueOf(unscaled, scale).stripTrailingZeros();
+        return value.scale() < 0 ? value.setScale(0) : value;
+    }
+
+    // COALESCE(ROUND(AVG(x), 2), 0)
+    private static BigDecimal average(long sum, int scale, long count) {
+        if (count == 0) {
+            return BigDecimal.ZERO;
+        }
+        return BigDecimal.valueOf(sum, scale).divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal revenue(GroupTable.Acc acc) {
+        BigDecimal value = new BigDecimal(acc.revenue(), SalesColumns.TONS_SCALE + SalesColumns.PRICE_SCALE).stripTrailingZeros();
+        return value.scale() < 0 ? value.setScale(0) : value;
+    }
+
+    private static LocalDate date(int epochDay) {
+        return epochDay == Integer.MAX_VALUE || epochDay == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
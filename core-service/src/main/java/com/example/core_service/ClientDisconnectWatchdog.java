@@ -0,0 +1,129 @@
+package com.example.core_service;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отмена запроса QueryGuard, когда клиент закрыл соединение.
+ * Пока запрос обрабатывается асинхронно, Tomcat сокет не читает и об обрыве не сообщает:
+ * handleError у перехватчика не вызывается, выборка идет до конца. Поэтому на время выборки
+ * на входной поток ставится ReadListener (без него available() не трогает сокет), а планировщик
+ * раз в query-timeout.disconnect-check-ms вызывает available() - неблокирующее чтение из сокета.
+ * На закрытом соединении оно получает EOF или ошибку, и запрос отменяется в Postgres.
+ */
+@Component
+class ClientDisconnectWatchdog implements CallableProcessingInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientDisconnectWatchdog.class);
+
+    private final Map<QueryGuard.Query<?>, Probe> inFlight = new ConcurrentHashMap<>();
+
+    // Вызывается в потоке выборки, когда асинхронная обработка уже начата
+    @Override
+    public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+        HttpServletRequest http = request.getNativeRequest(HttpServletRequest.class);
+        if (!(task instanceof QueryGuard.Query<?> query) || http == null || !http.isAsyncStarted()) {
+            return;
+        }
+        try {
+            ServletInputStream in = http.getInputStream();
+            if (!in.isFinished()) {
+                // Непрочитанное тело выглядело бы для available() как живые данные
+                return;
+            }
+            Probe probe = new Probe(query, in);
+            in.setReadListener(probe);
+            inFlight.put(query, probe);
+        } catch (IOException | IllegalStateException e) {
+            // Поток уже отдан Reader'у или недоступен - запрос просто не отслеживается
+            log.debug("Disconnect detection unavailable: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object result) {
+        release(task);
+    }
+
+    @Override
+    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+        release(task);
+    }
+
+    @Scheduled(initialDelayString = "${query-timeout.disconnect-check-ms:500}",
+            fixedDelayString = "${query-timeout.disconnect-check-ms:500}")
+    public void check() {
+        inFlight.values().forEach(Probe::check);
+    }
+
+    private void release(Callable<?> task) {
+        Probe probe = inFlight.remove(task);
+        if (probe != null) {
+            probe.close();
+        }
+    }
+
+    private static final class Probe implements ReadListener {
+
+        private final QueryGuard.Query<?> query;
+        private final ServletInputStream in;
+
+        // После завершения выборки запрос уходит контейнеру, трогать его поток больше нельзя
+        private boolean closed;
+
+        private Probe(QueryGuard.Query<?> query, ServletInputStream in) {
+            this.query = query;
+            this.in = in;
+        }
+
+        synchronized void check() {
+            if (closed) {
+                return;
+            }
+            try {
+                // Тело запроса прочитано, значит данных больше нет: 1 - это EOF, клиент закрыл соединение
+                if (in.available() > 0) {
+                    disconnected();
+                }
+            } catch (IOException e) {
+                disconnected();
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+        }
+
+        private void disconnected() {
+            closed = true;
+            query.cancel("client-disconnect");
+        }
+
+        @Override
+        public void onDataAvailable() {
+        }
+
+        @Override
+        public void onAllDataRead() {
+        }
+
+        @Override
+        public synchronized void onError(Throwable t) {
+            if (!closed) {
+                disconnected();
+            }
+        }
+    }
+}
@@ -10,7 +10,12 @@ import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
 
 @RestController
 @RequestMapping("/api")
@@ -18,9 +23,16 @@ import java.math.BigDecimal;
 public class DbController {
 
     private final NamedParameterJdbcTemplate jdbc;
+    private final PartitionManager partitions;
+    private final AnalyticsEngine analytics;
+    private final QueryGuard queries;
 
-    public DbController(NamedParameterJdbcTemplate jdbc) {
+    public DbController(NamedParameterJdbcTemplate jdbc, PartitionManager partitions, AnalyticsEngine analytics,
+                        QueryGuard queries) {
         this.jdbc = jdbc;
+        this.partitions = partitions;
+        this.analytics = analytics;
+        this.queries = queries;
     }
 
     // Валидация имени таблицы/представления
@@ -32,18 +44,25 @@ public class DbController {
 
     // Получить все данные из таблицы
     @GetMapping("/tables/{table}")
-    public List<Map<String, Object>> getTable(@PathVariable String table) {
+    public Callable<List<Map<String, Object>>> getTable(@PathVariable String table) {
         validateTableName(table);
         String sql = "SELECT * FROM " + table + " ORDER BY id";
-        return jdbc.queryForList(sql, new HashMap<>());
+        return queries.callable(QueryGuard.Route.TABLE, () -> jdbc.queryForList(sql, new HashMap<>()));
     }
 
     // Получить данные из представления
     @GetMapping("/views/{view}")
-    public List<Map<String, Object>> getView(@PathVariable String view) {
+    public Callable<List<Map<String, Object>>> getView(@PathVariable String view) {
         validateTableName(view);
+        
+        // Агрегаты по продажам - из памяти, если движок включен и загружен
+        List<Map<String, Object>> cached = analytics.view(view);
+        if (cached != null) {
+            return () -> cached;
+        }
+        
         String sql = "SELECT * FROM " + view;
-        return jdbc.queryForList(sql, new HashMap<>());
+        return queries.callable(QueryGuard.Route.VIEW, () -> jdbc.queryForList(sql, new HashMap<>()));
     }
 
     // Добавить новую запись в таблицу
@@ -57,6 +76,9 @@ public class DbController {
         // Удаляем id, если он есть (для автогенерации)
         row.remove("id");
         
+        // Ключ секционирования и сама секция для таблиц фактов
+        partitions.prepareRow(table, row);
+        
         // Подготавливаем параметры
         MapSqlParameterSource params = new MapSqlParameterSource();
         StringBuilder columns = new StringBuilder();
@@ -82,6 +104,7 @@ public class DbController {
         
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbc.update(sql, params, keyHolder);
+        analytics.onWrite(table, keyHolder.getKey());
         
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
@@ -111,6 +134,9 @@ public class DbController {
         // Удаляем id из данных обновления
         row.remove("id");
         
+        // При смене даты/смены строка переедет в другую секцию - она должна существовать
+        partitions.prepareRow(table, row);
+        
         // Формируем SQL для UPDATE
         StringBuilder setClause = new StringBuilder();
         MapSqlParameterSource params = new MapSqlParameterSource();
@@ -141,6 +167,7 @@ public class DbController {
         String sql = "UPDATE " + table + " SET " + setClause + " WHERE id = :id";
         
         int rowsAffected = jdbc.update(sql, params);
+        analytics.onWrite(table, id);
         
         Map<String, Object> result = new HashMap<>();
         result.put("success", rowsAffected > 0);
@@ -157,6 +184,7 @@ public class DbController {
         MapSqlParameterSource params = new MapSqlParameterSource("id", id);
         
         int rowsAffected = jdbc.update(sql, params);
+        analytics.onWrite(table, id);
         
         Map<String, Object> result = new HashMap<>();
         result.put("success", rowsAffected > 0);
@@ -173,7 +201,7 @@ public class DbController {
         MapSqlParameterSource params = new MapSqlParameterSource("id", id);
         
         try {
-            return jdbc.queryForMap(sql, params);
+            return queries.run(QueryGuard.Route.POINT, () -> jdbc.queryForMap(sql, params));
         } catch (EmptyResultDataAccessException e) {
             throw new RuntimeException("Record with id " + id + " not found");
         }
@@ -181,7 +209,7 @@ public class DbController {
 
     // Получение данных по внешнему ключу (ИСПРАВЛЕННЫЙ ВЕРСИЯ)
     @GetMapping("/tables/{table}/filter")
-    public List<Map<String, Object>> getByFk(
+    public Callable<List<Map<String, Object>>> getByFk(
             @PathVariable String table,
             @RequestParam String column,
             @RequestParam String value  // Оставляем String, так как из запроса всегда приходит строка
@@ -195,12 +223,12 @@ public class DbController {
         String sql = "SELECT * FROM " + table + " WHERE " + column + " = :value ORDER BY id";
         MapSqlParameterSource params = new MapSqlParameterSource("value", convertValue(value));
         
-        return jdbc.queryForList(sql, params);
+        return queries.callable(QueryGuard.Route.TABLE, () -> jdbc.queryForList(sql, params));
     }
 
     // Отчеты для системы рудных месторождений
     @GetMapping("/reports/{report}")
-    public List<Map<String, Object>> getReport(
+    public Callable<List<Map<String, Object>>> getReport(
             @PathVariable String report,
             @RequestParam(required = false) String from,
             @RequestParam(required = false) String to,
@@ -209,6 +237,12 @@ public class DbController {
             @RequestParam(required = false) String q,
             @RequestParam(required = false) Boolean isConfirmed
     ) {
+        // Продажи и добыча по месяцам - из памяти, если движок включен и загружен
+        List<Map<String, Object>> cached = analytics.report(report, from, to, year, month);
+        if (cached != null) {
+            return () -> cached;
+        }
+        
         MapSqlParameterSource params = new MapSqlParameterSource();
         
         String sql = switch (report) {
@@ -226,13 +260,13 @@ public class DbController {
                             COALESCE(ROUND(AVG(sp.tons_of_ore), 2), 0) AS avg_production_per_shift
                         FROM work_shifts ws
                         JOIN ore_deposits od ON ws.ore_deposit_id = od.id
-                        LEFT JOIN shift_production sp ON ws.id = sp.shift_id
+                        LEFT JOIN shift_production sp ON ws.id = sp.shift_id %s
                         LEFT JOIN minerals m ON sp.mineral_id = m.id
-                        WHERE EXTRACT(YEAR FROM ws.shift_date) = :year
-                          AND EXTRACT(MONTH FROM ws.shift_date) = :month
+                        WHERE ws.shift_date >= make_date(:year, :month, 1)
+                          AND ws.shift_date < (make_date(:year, :month, 1) + INTERVAL '1 month')::date
                         GROUP BY od.name, m.name
                         ORDER BY total_production DESC
-                        """;
+                        """.formatted(productionShiftDate("sp.shift_date >= make_date(:year, :month, 1) AND sp.shift_date < (make_date(:year, :month, 1) + INTERVAL '1 month')::date"));
                 } else if (year != null) {
                     params.addValue("year", year);
                     yield """
@@ -243,11 +277,12 @@ public class DbController {
                             COUNT(ws.id) AS shifts_count
                         FROM work_shifts ws
                         JOIN ore_deposits od ON ws.ore_deposit_id = od.id
-                        LEFT JOIN shift_production sp ON ws.id = sp.shift_id
-                        WHERE EXTRACT(YEAR FROM ws.shift_date) = :year
+                        LEFT JOIN shift_production sp ON ws.id = sp.shift_id %s
+                        WHERE ws.shift_date >= make_date(:year, 1, 1)
+                          AND ws.shift_date < make_date(:year + 1, 1, 1)
                         GROUP BY od.name, EXTRACT(MONTH FROM ws.shift_date)
                         ORDER BY month, total_production DESC
-                        """;
+                        """.formatted(productionShiftDate("sp.shift_date >= make_date(:year, 1, 1) AND sp.shift_date < make_date(:year + 1, 1, 1)"));
                 } else {
                     yield """
                         SELECT 
@@ -260,11 +295,11 @@ public class DbController {
                             COALESCE(ROUND(AVG(sp.tons_of_ore), 2), 0) AS avg_production
                         FROM work_shifts ws
                         JOIN ore_deposits od ON ws.ore_deposit_id = od.id
-                        LEFT JOIN shift_production sp ON ws.id = sp.shift_id
+                        LEFT JOIN shift_production sp ON ws.id = sp.shift_id %s
                         LEFT JOIN minerals m ON sp.mineral_id = m.id
                         GROUP BY od.name, m.name, EXTRACT(YEAR FROM ws.shift_date), EXTRACT(MONTH FROM ws.shift_date)
                         ORDER BY year DESC, month_number DESC
-                        """;
+                        """.formatted(productionShiftDate(null));
                 }
             }
 
@@ -385,12 +420,12 @@ public class DbController {
                         JOIN teams t ON mt.team_id = t.id
                         JOIN team_names tn ON t.name_id = tn.id
                         JOIN work_shifts ws ON mt.id = ws.mining_team_id
-                        LEFT JOIN shift_production sp ON ws.id = sp.shift_id
-                        WHERE EXTRACT(YEAR FROM ws.shift_date) = :year
-                          AND EXTRACT(MONTH FROM ws.shift_date) = :month
+                        LEFT JOIN shift_production sp ON ws.id = sp.shift_id %s
+                        WHERE ws.shift_date >= make_date(:year, :month, 1)
+                          AND ws.shift_date < (make_date(:year, :month, 1) + INTERVAL '1 month')::date
                         GROUP BY tn.name, mt.foreman_name
                         ORDER BY total_production DESC
-                        """;
+                        """.formatted(productionShiftDate("sp.shift_date >= make_date(:year, :month, 1) AND sp.shift_date < (make_date(:year, :month, 1) + INTERVAL '1 month')::date"));
                 } else {
                     yield """
                         SELECT 
@@ -407,10 +442,10 @@ public class DbController {
                         JOIN teams t ON mt.team_id = t.id
                         JOIN team_names tn ON t.name_id = tn.id
                         JOIN work_shifts ws ON mt.id = ws.mining_team_id
-                        LEFT JOIN shift_production sp ON ws.id = sp.shift_id
+                        LEFT JOIN shift_production sp ON ws.id = sp.shift_id %s
                         GROUP BY tn.name, mt.foreman_name, EXTRACT(YEAR FROM ws.shift_date), EXTRACT(MONTH FROM ws.shift_date)
                         ORDER BY year DESC, month DESC, total_production DESC
-                        """;
+                        """.formatted(productionShiftDate(null));
                 }
             }
 
@@ -419,21 +454,35 @@ public class DbController {
                 if (from != null && to != null) {
                     params.addValue("from", from);
                     params.addValue("to", to);
+                    // Период - прямо на sales_to_companies (отсечение секций); покупатели без продаж
+                    // вообще показываются, как и раньше, а с продажами только вне периода - нет
                     yield """
                         SELECT 
                             bc.name AS company_name,
                             bc.contact_name,
                             bc.contact_phone,
-                            COUNT(s.id) AS purchase_count,
-                            COALESCE(SUM(s.sold_tons), 0) AS total_purchased_tons,
-                            COALESCE(SUM(s.sold_tons * s.sale_price_per_ton), 0) AS total_spent,
-                            COALESCE(ROUND(AVG(s.sale_price_per_ton), 2), 0) AS avg_price_paid,
-                            MIN(s.sale_date) AS first_purchase_date,
-                            MAX(s.sale_date) AS last_purchase_date
+                            COALESCE(s.purchase_count, 0) AS purchase_count,
+                            COALESCE(s.total_purchased_tons, 0) AS total_purchased_tons,
+                            COALESCE(s.total_spent, 0) AS total_spent,
+                            COALESCE(s.avg_price_paid, 0) AS avg_price_paid,
+                            s.first_purchase_date,
+                            s.last_purchase_date
                         FROM buyers_companies bc
-                        LEFT JOIN sales_to_companies s ON bc.id = s.buyer_id
-                        WHERE (s.sale_date BETWEEN :from::date AND :to::date OR s.sale_date IS NULL)
-                        GROUP BY bc.id, bc.name, bc.contact_name, bc.contact_phone
+                        LEFT JOIN (
+                            SELECT 
+                                buyer_id,
+                                COUNT(*) AS purchase_count,
+                                SUM(sold_tons) AS total_purchased_tons,
+                                SUM(sold_tons * sale_price_per_ton) AS total_spent,
+                                ROUND(AVG(sale_price_per_ton), 2) AS avg_price_paid,
+                                MIN(sale_date) AS first_purchase_date,
+                                MAX(sale_date) AS last_purchase_date
+                            FROM sales_to_companies
+                            WHERE sale_date BETWEEN :from::date AND :to::date
+                            GROUP BY buyer_id
+                        ) s ON s.buyer_id = bc.id
+                        WHERE s.buyer_id IS NOT NULL
+                           OR NOT EXISTS (SELECT 1 FROM sales_to_companies a WHERE a.buyer_id = bc.id)
                         ORDER BY total_spent DESC NULLS LAST
                         """;
                 } else {
@@ -467,7 +516,7 @@ public class DbController {
                             COUNT(*) AS deposits_discovered,
                             STRING_AGG(od.name, ', ') AS deposit_names
                         FROM ore_deposits od
-                        WHERE od.discovery_year BETWEEN :from AND :to
+                        WHERE od.discovery_year BETWEEN :from::int AND :to::int
                         GROUP BY od.discovery_year
                         ORDER BY od.discovery_year DESC
                         """;
@@ -499,7 +548,7 @@ public class DbController {
                             sp.equipment_damaged,
                             sp.notes AS damage_description
                         FROM shift_production sp
-                        JOIN work_shifts ws ON sp.shift_id = ws.id
+                        JOIN work_shifts ws ON sp.shift_id = ws.id %s
                         JOIN ore_deposits od ON ws.ore_deposit_id = od.id
                         JOIN mining_teams mt ON ws.mining_team_id = mt.id
                         JOIN teams t ON mt.team_id = t.id
@@ -507,7 +556,7 @@ public class DbController {
                         WHERE sp.equipment_damaged = true
                           AND ws.shift_date BETWEEN :from::date AND :to::date
                         ORDER BY ws.shift_date DESC
-                        """;
+                        """.formatted(productionShiftDate("sp.shift_date BETWEEN :from::date AND :to::date"));
                 } else {
                     yield """
                         SELECT 
@@ -519,21 +568,32 @@ public class DbController {
                             sp.equipment_damaged,
                             sp.notes AS damage_description
                         FROM shift_production sp
-                        JOIN work_shifts ws ON sp.shift_id = ws.id
+                        JOIN work_shifts ws ON sp.shift_id = ws.id %s
                         JOIN ore_deposits od ON ws.ore_deposit_id = od.id
                         JOIN mining_teams mt ON ws.mining_team_id = mt.id
                         JOIN teams t ON mt.team_id = t.id
                         JOIN team_names tn ON t.name_id = tn.id
                         WHERE sp.equipment_damaged = true
                         ORDER BY ws.shift_date DESC
-                        """;
+                        """.formatted(productionShiftDate(null));
                 }
             }
 
             default -> throw new IllegalArgumentException("Unknown report type: " + report);
         };
 
-        return jdbc.queryForList(sql, params);
+        return queries.callable(QueryGuard.Route.REPORT, () -> jdbc.queryForList(sql, params));
+    }
+
+    // Соединение добычи со сменой: после перевода на секции - еще и по shift_date (составной ключ),
+    // а condition на sp.shift_date отсекает секции shift_production. В старой схеме колонки нет
+    private String productionShiftDate(String condition) {
+        if (!partitions.hasProductionShiftDate()) {
+            return "";
+        }
+        return condition == null
+                ? "AND sp.shift_date = ws.shift_date"
+                : "AND sp.shift_date = ws.shift_date AND " + condition;
     }
 
     // Конвертация значений для SQL (ИСПРАВЛЕННАЯ ВЕРСИЯ)
@@ -565,8 +625,8 @@ public class DbController {
                     try {
                         return Double.parseDouble(str);
                     } catch (NumberFormatException e3) {
-                        // Оставляем как строку
-                        return str;
+                        // Даты и время из форм - в java.time, остальное оставляем как строку
+                        return convertTemporal(str);
                     }
                 }
             }
@@ -575,4 +635,22 @@ public class DbController {
         // Если это уже другой тип (Number, Boolean), возвращаем как есть
         return value;
     }
+
+    // "2024-05-01" -> DATE, "08:30" -> TIME, "2024-05-01T08:30" -> TIMESTAMP; строка уходит в БД как varchar
+    // и не приводится к этим типам сама
+    private Object convertTemporal(String str) {
+        try {
+            return LocalDate.parse(str);
+        } catch (DateTimeParseException e1) {
+            try {
+                return LocalTime.parse(str);
+            } catch (DateTimeParseException e2) {
+                try {
+                    return LocalDateTime.parse(str);
+                } catch (DateTimeParseException e3) {
+                    return str;
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
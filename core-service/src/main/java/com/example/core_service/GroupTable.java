@@ -0,0 +1,139 @@
+package com.example.core_service;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+
+/**
+ * Хеш-таблица групп (ключ long -> агрегаты) с открытой адресацией, без упаковки ключей.
+ * Одна таблица на поток сканирования, в конце таблицы сливаются.
+ */
+final class GroupTable {
+
+    /** Агрегаты одной группы; какие поля заполнены - решает конкретный отчет. */
+    static final class Acc {
+        long count;          // строк в группе (COUNT(*) / COUNT(ws.id))
+        long valueCount;     // строк с непустой мерой (для AVG)
+        long sumTons;
+        long sumPrice;
+        long revenueHi;      // SUM(tons * price) - 128 бит, иначе переполнение на 10M строк
+        long revenueLo;
+        long minPrice = Long.MAX_VALUE;
+        long maxPrice = Long.MIN_VALUE;
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        BitSet buyers;       // COUNT(DISTINCT buyer_id)
+        long dayMask;        // дни месяца (COUNT(DISTINCT shift_date) в пределах месяца)
+        long flagged;        // строк с признаком (equipment_damaged)
+
+        void addRevenue(long product) {
+            // Знаковое расширение до 128 бит: отрицательное слагаемое - это -1 в старшем слове
+            revenueHi += product >> 63;
+            addRevenueLo(product);
+        }
+
+        // Сложение младшего слова без знака с переносом в старшее
+        private void addRevenueLo(long value) {
+            long lo = revenueLo + value;
+            if (Long.compareUnsigned(lo, revenueLo) < 0) {
+                revenueHi++;
+            }
+            revenueLo = lo;
+        }
+
+        BigInteger revenue() {
+            return BigInteger.valueOf(revenueHi).shiftLeft(64).add(new BigInteger(Long.toUnsignedString(revenueLo)));
+        }
+
+        void merge(Acc other) {
+            count += other.count;
+            valueCount += other.valueCount;
+            sumTons = Math.addExact(sumTons, other.sumTons);
+            sumPrice = Math.addExact(sumPrice, other.sumPrice);
+            revenueHi += other.revenueHi;
+            addRevenueLo(other.revenueLo);
+            minPrice = Math.min(minPrice, other.minPrice);
+            maxPrice = Math.max(maxPrice, other.maxPrice);
+            minDay = Math.min(minDay, other.minDay);
+            maxDay = Math.max(maxDay, other.maxDay);
+            dayMask |= other.dayMask;
+            flagged += other.flagged;
+            if (other.buyers != null) {
+                if (buyers == null) {
+                    buyers = new BitSet();
+                }
+                buyers.or(other.buyers);
+            }
+        }
+    }
+
+    interface Visitor {
+        void visit(long key, Acc acc);
+    }
+
+    private long[] keys = new long[64];
+    private Acc[] values = new Acc[64];
+    private int size;
+
+    Acc get(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            Acc acc = values[i];
+            if (acc == null) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    return get(key);
+                }
+                acc = new Acc();
+                keys[i] = key;
+                values[i] = acc;
+                size++;
+                return acc;
+            }
+            if (keys[i] == key) {
+                return acc;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    void mergeFrom(GroupTable other) {
+        other.forEach((key, acc) -> get(key).merge(acc));
+    }
+
+    void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Acc[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Acc[oldValues.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == null) {
+                continue;
+            }
+            int i = hash(oldKeys[j]) & mask;
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
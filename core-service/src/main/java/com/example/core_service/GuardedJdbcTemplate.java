@@ -0,0 +1,27 @@
+package com.example.core_service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JdbcTemplate, который передает каждый Statement текущему запросу QueryGuard:
+ * тот ставит таймаут своего маршрута и держит Statement для cancel().
+ */
+class GuardedJdbcTemplate extends JdbcTemplate {
+
+    GuardedJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        QueryGuard.Query<?> query = QueryGuard.current();
+        if (query != null) {
+            query.register(stmt);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.core_service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Параллельный проход по диапазону строк [from; to) через fork-join:
+ * каждый лист агрегирует свою часть в собственную GroupTable, при join таблицы сливаются.
+ */
+final class ParallelScan extends RecursiveTask<GroupTable> {
+
+    interface RowAggregator {
+        void accept(int row, GroupTable groups);
+    }
+
+    private static final int MIN_CHUNK = 16_384;
+
+    private final int from;
+    private final int to;
+    private final int chunk;
+    private final RowAggregator aggregator;
+
+    private ParallelScan(int from, int to, int chunk, RowAggregator aggregator) {
+        this.from = from;
+        this.to = to;
+        this.chunk = chunk;
+        this.aggregator = aggregator;
+    }
+
+    static GroupTable aggregate(int from, int to, RowAggregator aggregator) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int chunk = Math.max(MIN_CHUNK, (to - from) / (pool.getParallelism() * 4));
+        return pool.invoke(new ParallelScan(from, to, chunk, aggregator));
+    }
+
+    @Override
+    protected GroupTable compute() {
+        if (to - from <= chunk) {
+            GroupTable groups = new GroupTable();
+            for (int row = from; row < to; row++) {
+                aggregator.accept(row, groups);
+            }
+            return groups;
+        }
+
+        int mid = (from + to) >>> 1;
+        ParallelScan left = new ParallelScan(from, mid, chunk, aggregator);
+        ParallelScan right = new ParallelScan(mid, to, chunk, aggregator);
+        left.fork();
+        GroupTable result = right.compute();
+        GroupTable other = left.join();
+        // Сливаем меньшую таблицу в большую
+        if (other.size() > result.size()) {
+            other.mergeFrom(result);
+            return other;
+        }
+        result.mergeFrom(other);
+        return result;
+    }
+}
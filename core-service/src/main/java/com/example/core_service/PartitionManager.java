@@ -0,0 +1,459 @@
+package com.example.core_service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Месячное секционирование таблиц фактов (work_shifts, shift_production, sales_to_companies).
+ * Создает секции заранее, подготавливает строки на запись через /api/tables/{table}
+ * и отсоединяет (в архивную схему) или удаляет секции старше срока хранения.
+ * БД, созданную init.sql до секционирования, при старте переводит на секции
+ * скриптом db/partitioning-migration.sql; до этого отчеты идут по старой схеме.
+ */
+@Component
+public class PartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionManager.class);
+
+    private static final String MIGRATION_SCRIPT = "db/partitioning-migration.sql";
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("uuuuMM");
+
+    // Таблица -> колонка-ключ секционирования. Порядок важен для удаления:
+    // shift_production ссылается на work_shifts, поэтому обрабатывается раньше.
+    private static final Map<String, String> PARTITION_KEYS = new LinkedHashMap<>();
+    static {
+        PARTITION_KEYS.put("shift_production", "shift_date");
+        PARTITION_KEYS.put("work_shifts", "shift_date");
+        PARTITION_KEYS.put("sales_to_companies", "sale_date");
+    }
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final AnalyticsEngine analytics;
+    private final TransactionTemplate transactions;
+
+    // Таблицы, которые в этой БД действительно секционированы (старые тома остаются обычными таблицами)
+    private final Set<String> partitionedTables = ConcurrentHashMap.newKeySet();
+
+    // Каталог прочитан; до этого список таблиц читается при первой записи или обслуживании
+    private volatile boolean refreshed;
+
+    // Уже существующие секции: "<таблица>_pYYYYMM"
+    private final Set<String> knownPartitions = ConcurrentHashMap.newKeySet();
+
+    // В shift_production есть shift_date (в старой схеме колонки нет, пока не прошла миграция)
+    private volatile boolean productionShiftDate;
+
+    @Value("${partitioning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${partitioning.months-ahead:3}")
+    private int monthsAhead;
+
+    // 0 - хранить всю историю
+    @Value("${partitioning.retention-months:0}")
+    private int retentionMonths;
+
+    // detach - перенести секцию в архивную схему, drop - удалить
+    @Value("${partitioning.retention-action:detach}")
+    private String retentionAction;
+
+    @Value("${partitioning.archive-schema:archive}")
+    private String archiveSchema;
+
+    // Переводить старую схему на секции при старте
+    @Value("${partitioning.migrate:true}")
+    private boolean migrate;
+
+    public PartitionManager(NamedParameterJdbcTemplate jdbc, AnalyticsEngine analytics) {
+        this.jdbc = jdbc;
+        this.analytics = analytics;
+        this.transactions = new TransactionTemplate(new DataSourceTransactionManager(jdbc.getJdbcTemplate().getDataSource()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    // Ежедневное обслуживание: секции на весь срок хранения и вперед + отсоединение старых
+    @Scheduled(cron = "${partitioning.maintenance-cron:0 15 3 * * *}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            migrateLegacySchema();
+        } catch (RuntimeException e) {
+            // Скрипт выполняется одной транзакцией: база осталась в старой схеме, отчеты работают по ней
+            log.error("Migration to partitioned tables failed, legacy schema is kept", e);
+        }
+        try {
+            refreshPartitions();
+        } catch (DataAccessException e) {
+            // Не страшно: prepareRow перечитает каталог при первой записи, следующий запуск - по cron
+            log.warn("Partition maintenance failed: {}", e.getMessage());
+            return;
+        }
+
+        YearMonth current = YearMonth.now();
+        for (String table : PARTITION_KEYS.keySet()) {
+            if (!partitionedTables.contains(table)) {
+                continue;
+            }
+            try {
+                // При записи DDL не нужен: секции всего допустимого окна (см. prepareRow) уже есть
+                for (int i = -Math.max(retentionMonths, 0); i <= monthsAhead; i++) {
+                    ensurePartition(table, current.plusMonths(i));
+                }
+            } catch (DataAccessException e) {
+                log.warn("Failed to create partitions of {}: {}", table, e.getMessage());
+            }
+        }
+        applyRetention(current);
+    }
+
+    /**
+     * Подготовка строки перед INSERT/UPDATE: для shift_production подставляет shift_date смены,
+     * для всех секционированных таблиц создает недостающую месячную секцию.
+     * Дата вне окна [срок хранения; текущий месяц + months-ahead] - 400: секция такого месяца
+     * отсоединена (или будет отсоединена при следующем обслуживании) либо еще не положена.
+     */
+    public void prepareRow(String table, Map<String, Object> row) {
+        // shift_date обязателен и без секционирования: это половина внешнего ключа на смену.
+        // В старой схеме колонки нет - значение из запроса отбрасывается
+        if ("shift_production".equals(table)) {
+            if (!hasProductionShiftDate()) {
+                row.remove("shift_date");
+            } else if (row.get("shift_id") != null) {
+                row.put("shift_date", lookupShiftDate(row.get("shift_id")));
+            }
+        }
+
+        if (!enabled) {
+            return;
+        }
+        if (!refreshed) {
+            refreshPartitions();
+        }
+        if (!partitionedTables.contains(table)) {
+            return;
+        }
+
+        Object date = row.get(PARTITION_KEYS.get(table));
+        if (date != null) {
+            YearMonth month = YearMonth.from(toLocalDate(date));
+            checkWindow(table, month);
+            ensurePartition(table, month);
+            // Перенос смены каскадом переносит и ее добычу
+            if ("work_shifts".equals(table) && partitionedTables.contains("shift_production")) {
+                ensurePartition("shift_production", month);
+            }
+        }
+    }
+
+    private void checkWindow(String table, YearMonth month) {
+        YearMonth current = YearMonth.now();
+        YearMonth last = current.plusMonths(monthsAhead);
+        if (month.isAfter(last)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    table + ": " + month + " is after the last partitioned month " + last);
+        }
+        if (retentionMonths > 0 && month.isBefore(current.minusMonths(retentionMonths))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    table + ": " + month + " is older than the retention period of " + retentionMonths + " months");
+        }
+    }
+
+    /** Есть ли shift_production.shift_date: без нее отчеты соединяют добычу со сменой только по shift_id. */
+    public boolean hasProductionShiftDate() {
+        if (!refreshed) {
+            refreshPartitions();
+        }
+        return productionShiftDate;
+    }
+
+    private LocalDate lookupShiftDate(Object shiftId) {
+        String sql = "SELECT shift_date FROM work_shifts WHERE id = :id";
+        MapSqlParameterSource params = new MapSqlParameterSource("id", Long.parseLong(shiftId.toString().trim()));
+        try {
+            return jdbc.queryForObject(sql, params, LocalDate.class);
+        } catch (EmptyResultDataAccessException e) {
+            throw new IllegalArgumentException("Shift with id " + shiftId + " not found");
+        }
+    }
+
+    private LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        String str = value.toString().trim();
+        // Допускаем "2024-05-01T00:00:00" из форм
+        return LocalDate.parse(str.length() > 10 ? str.substring(0, 10) : str);
+    }
+
+    // Создание секции [month; month + 1) если ее еще нет
+    public synchronized void ensurePartition(String table, YearMonth month) {
+        String partition = partitionName(table, month);
+        if (knownPartitions.contains(partition)) {
+            return;
+        }
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        jdbc.getJdbcTemplate().execute("CREATE TABLE IF NOT EXISTS " + partition
+                + " PARTITION OF " + table
+                + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        knownPartitions.add(partition);
+        log.info("Partition {} is ready", partition);
+    }
+
+    private void applyRetention(YearMonth current) {
+        if (retentionMonths <= 0) {
+            return;
+        }
+        YearMonth cutoff = current.minusMonths(retentionMonths);
+        boolean drop = "drop".equalsIgnoreCase(retentionAction);
+        if (!drop) {
+            try {
+                jdbc.getJdbcTemplate().execute("CREATE SCHEMA IF NOT EXISTS " + archiveSchema);
+            } catch (DataAccessException e) {
+                log.warn("Failed to create schema {}: {}", archiveSchema, e.getMessage());
+                return;
+            }
+        }
+
+        // Каждая секция отдельно: сбой одной не должен оставлять без обслуживания остальные таблицы
+        for (String table : PARTITION_KEYS.keySet()) {
+            if (!partitionedTables.contains(table)) {
+                continue;
+            }
+            List<String> partitions;
+            try {
+                partitions = listPartitions(table);
+            } catch (DataAccessException e) {
+                log.warn("Failed to list partitions of {}: {}", table, e.getMessage());
+                continue;
+            }
+            for (String partition : partitions) {
+                YearMonth month = parseMonth(table, partition);
+                if (month == null || !month.isBefore(cutoff)) {
+                    continue;
+                }
+                // И при сбое: отсоединенная кем-то секция не должна числиться существующей
+                knownPartitions.remove(partition);
+                try {
+                    retirePartition(table, partition, drop);
+                    // Строки секции пропали из таблицы - движок не должен их больше показывать
+                    analytics.invalidate();
+                } catch (DataAccessException e) {
+                    log.warn("Retention of partition {} failed: {}", partition, e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Секция сначала отсоединяется: напрямую секцию work_shifts не удалить,
+    // от нее зависит составной внешний ключ shift_production.
+    // Все шаги в одной транзакции: при сбое секция остается в таблице вместе с внешними ключами
+    private void retirePartition(String table, String partition, boolean drop) {
+        String archived = drop ? null : archiveName(partition);
+        transactions.executeWithoutResult(status -> {
+            jdbc.getJdbcTemplate().execute("ALTER TABLE " + table + " DETACH PARTITION " + partition);
+            if (drop) {
+                jdbc.getJdbcTemplate().execute("DROP TABLE " + partition);
+            } else {
+                archivePartition(partition, archived);
+            }
+        });
+        if (drop) {
+            log.info("Partition {} dropped (retention {} months)", partition, retentionMonths);
+        } else {
+            log.info("Partition {} moved to {}.{} (retention {} months)", partition, archiveSchema, archived, retentionMonths);
+        }
+    }
+
+    // Месяц мог уже попасть в архив раньше (секцию создали заново) - тогда к имени добавляется номер
+    private String archiveName(String partition) {
+        String sql = """
+                SELECT c.relname
+                FROM pg_class c
+                JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE n.nspname = :schema
+                  AND starts_with(c.relname, :partition)
+                """;
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("schema", archiveSchema)
+                .addValue("partition", partition);
+        Set<String> taken = Set.copyOf(jdbc.queryForList(sql, params, String.class));
+        String name = partition;
+        for (int i = 1; taken.contains(name); i++) {
+            name = partition + "_" + i;
+        }
+        return name;
+    }
+
+    // Архив - самостоятельная таблица без внешних ключей,
+    // иначе она продолжала бы блокировать отсоединение секций work_shifts
+    private void archivePartition(String partition, String archived) {
+        String fkSql = """
+                SELECT conname
+                FROM pg_constraint
+                WHERE conrelid = CAST(:partition AS regclass)
+                  AND contype = 'f'
+                """;
+        List<String> foreignKeys = jdbc.queryForList(fkSql, new MapSqlParameterSource("partition", partition), String.class);
+        for (String fk : foreignKeys) {
+            jdbc.getJdbcTemplate().execute("ALTER TABLE " + partition + " DROP CONSTRAINT \"" + fk + "\"");
+        }
+
+        if (!archived.equals(partition)) {
+            // Индексы переезжают в схему вместе с таблицей: "<секция>_pkey" там тоже уже занят
+            String indexSql = """
+                    SELECT c.relname
+                    FROM pg_index i
+                    JOIN pg_class c ON c.oid = i.indexrelid
+                    WHERE i.indrelid = CAST(:partition AS regclass)
+                    """;
+            List<String> indexes = jdbc.queryForList(indexSql, new MapSqlParameterSource("partition", partition), String.class);
+            for (String index : indexes) {
+                if (index.startsWith(partition)) {
+                    jdbc.getJdbcTemplate().execute("ALTER INDEX \"" + index + "\" RENAME TO \""
+                            + archived + index.substring(partition.length()) + "\"");
+                }
+            }
+            jdbc.getJdbcTemplate().execute("ALTER TABLE " + partition + " RENAME TO " + archived);
+        }
+        jdbc.getJdbcTemplate().execute("ALTER TABLE " + archived + " SET SCHEMA " + archiveSchema);
+    }
+
+    // Старая схема: таблица фактов - обычная таблица или в shift_production нет shift_date
+    private synchronized void migrateLegacySchema() {
+        if (!migrate) {
+            return;
+        }
+        String sql = """
+                SELECT EXISTS (
+                    SELECT 1 FROM pg_class c
+                    JOIN pg_namespace n ON n.oid = c.relnamespace
+                    WHERE n.nspname = current_schema() AND c.relname IN (:tables) AND c.relkind = 'r'
+                ) OR (to_regclass('shift_production') IS NOT NULL AND NOT EXISTS (
+                    SELECT 1 FROM information_schema.columns
+                    WHERE table_schema = current_schema()
+                      AND table_name = 'shift_production' AND column_name = 'shift_date'
+                ))
+                """;
+        Boolean legacy = jdbc.queryForObject(sql,
+                new MapSqlParameterSource("tables", PARTITION_KEYS.keySet()), Boolean.class);
+        if (!Boolean.TRUE.equals(legacy)) {
+            return;
+        }
+
+        log.info("Legacy schema found, running {}", MIGRATION_SCRIPT);
+        String script;
+        try {
+            script = new ClassPathResource(MIGRATION_SCRIPT).getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        jdbc.getJdbcTemplate().execute(script);
+
+        // Таблицы и секции теперь другие: каталог перечитывается, движок загружается заново
+        partitionedTables.clear();
+        knownPartitions.clear();
+        refreshed = false;
+        analytics.invalidate();
+        log.info("Fact tables migrated to monthly partitions");
+    }
+
+    private synchronized void refreshPartitions() {
+        String sql = """
+                SELECT c.relname
+                FROM pg_partitioned_table pt
+                JOIN pg_class c ON c.oid = pt.partrelid
+                JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE n.nspname = current_schema()
+                """;
+        List<String> tables = jdbc.queryForList(sql, new MapSqlParameterSource(), String.class);
+        for (String table : PARTITION_KEYS.keySet()) {
+            if (tables.contains(table)) {
+                partitionedTables.add(table);
+                knownPartitions.addAll(listPartitions(table));
+            } else if (enabled) {
+                log.warn("Table {} is not partitioned, partition management is skipped for it", table);
+            }
+        }
+
+        String columnSql = """
+                SELECT EXISTS (
+                    SELECT 1 FROM information_schema.columns
+                    WHERE table_schema = current_schema()
+                      AND table_name = 'shift_production' AND column_name = 'shift_date'
+                )
+                """;
+        productionShiftDate = Boolean.TRUE.equals(
+                jdbc.queryForObject(columnSql, new MapSqlParameterSource(), Boolean.class));
+        if (!productionShiftDate) {
+            log.warn("shift_production has no shift_date column, reports join production to shifts by shift_id only");
+        }
+        refreshed = true;
+    }
+
+    private List<String> listPartitions(String table) {
+        String sql = """
+                SELECT c.relname
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                JOIN pg_namespace n ON n.oid = p.relnamespace
+                WHERE p.relname = :table
+                  AND n.nspname = current_schema()
+                ORDER BY c.relname
+                """;
+        return jdbc.queryForList(sql, new MapSqlParameterSource("table", table), String.class);
+    }
+
+    private String partitionName(String table, YearMonth month) {
+        return table + "_p" + month.format(SUFFIX);
+    }
+
+    private YearMonth parseMonth(String table, String partition) {
+        String prefix = table + "_p";
+        if (!partition.startsWith(prefix) || partition.length() != prefix.length() + 6) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition.substring(prefix.length()), SUFFIX);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
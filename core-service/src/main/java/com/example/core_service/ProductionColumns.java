@@ -0,0 +1,123 @@
+package com.example.core_service;
+
+import java.util.Arrays;
+
+/**
+ * Колоночное хранение work_shifts + shift_production.
+ * Смены индексируются прямо по id (дата, месторождение и бригада нужны каждой строке добычи),
+ * добыча хранится плотно, тонны - в тысячных. Дата строки добычи берется из ее смены,
+ * поэтому перенос смены на другую дату не требует правки строк добычи.
+ */
+final class ProductionColumns {
+
+    static final int TONS_SCALE = 3;
+
+    // Смены: индекс = id
+    int maxShiftId;
+    boolean[] shiftPresent = new boolean[1024];
+    int[] shiftDay = new int[1024];
+    int[] shiftDeposit = new int[1024];
+    int[] shiftTeam = new int[1024];
+    int[] shiftProductionCount = new int[1024];
+
+    // Добыча: плотные строки
+    int size;
+    int[] ids = new int[1024];
+    int[] shift = new int[1024];
+    int[] mineral = new int[1024];
+    long[] tons = new long[1024];
+    boolean[] damaged = new boolean[1024];
+
+    // id -> номер строки + 1 (0 - нет строки)
+    private int[] rowById = new int[1024];
+
+    void upsertShift(int id, int epochDay, int depositId, int teamId) {
+        ensureShiftCapacity(id);
+        shiftPresent[id] = true;
+        shiftDay[id] = epochDay;
+        shiftDeposit[id] = depositId;
+        shiftTeam[id] = teamId;
+        maxShiftId = Math.max(maxShiftId, id);
+    }
+
+    void removeShift(int id) {
+        if (id > 0 && id < shiftPresent.length) {
+            shiftPresent[id] = false;
+        }
+    }
+
+    boolean hasShift(int id) {
+        return id > 0 && id < shiftPresent.length && shiftPresent[id];
+    }
+
+    void upsertProduction(int id, int shiftId, int mineralId, long scaledTons, boolean equipmentDamaged) {
+        ensureShiftCapacity(shiftId);
+        int row = rowOf(id);
+        if (row < 0) {
+            ensureCapacity(size + 1);
+            row = size++;
+            ids[row] = id;
+            setRow(id, row);
+        } else {
+            shiftProductionCount[shift[row]]--;
+        }
+        shift[row] = shiftId;
+        mineral[row] = mineralId;
+        tons[row] = scaledTons;
+        damaged[row] = equipmentDamaged;
+        shiftProductionCount[shiftId]++;
+    }
+
+    void removeProduction(int id) {
+        int row = rowOf(id);
+        if (row < 0) {
+            return;
+        }
+        shiftProductionCount[shift[row]]--;
+        int last = --size;
+        if (row != last) {
+            ids[row] = ids[last];
+            shift[row] = shift[last];
+            mineral[row] = mineral[last];
+            tons[row] = tons[last];
+            damaged[row] = damaged[last];
+            setRow(ids[row], row);
+        }
+        rowById[id] = 0;
+    }
+
+    private int rowOf(int id) {
+        return id > 0 && id < rowById.length ? rowById[id] - 1 : -1;
+    }
+
+    private void setRow(int id, int row) {
+        if (id >= rowById.length) {
+            rowById = Arrays.copyOf(rowById, Math.max(id + 1, rowById.length * 2));
+        }
+        rowById[id] = row + 1;
+    }
+
+    private void ensureShiftCapacity(int id) {
+        if (id < shiftPresent.length) {
+            return;
+        }
+        int newLength = Math.max(id + 1, shiftPresent.length * 2);
+        shiftPresent = Arrays.copyOf(shiftPresent, newLength);
+        shiftDay = Arrays.copyOf(shiftDay, newLength);
+        shiftDeposit = Arrays.copyOf(shiftDeposit, newLength);
+        shiftTeam = Arrays.copyOf(shiftTeam, newLength);
+        shiftProductionCount = Arrays.copyOf(shiftProductionCount, newLength);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newLength);
+        shift = Arrays.copyOf(shift, newLength);
+        mineral = Arrays.copyOf(mineral, newLength);
+        tons = Arrays.copyOf(tons, newLength);
+        damaged = Arrays.copyOf(damaged, newLength);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.core_service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Таймауты и отмена запросов чтения из контроллера.
+ * Таймаут задается по классу маршрута и ставится на каждый Statement (см. GuardedJdbcTemplate).
+ * Запрос, отданный как Callable, выполняется в пуле асинхронной обработки MVC и отменяется
+ * в Postgres, если клиент разорвал соединение (см. ClientDisconnectWatchdog) или истек
+ * spring.mvc.async.request-timeout.
+ * Счетчики: db.query.timeouts{route}, db.query.cancellations{route, reason}.
+ */
+@Component
+public class QueryGuard {
+
+    enum Route {
+        POINT, TABLE, VIEW, REPORT;
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(QueryGuard.class);
+
+    // SQLSTATE query_canceled: так Postgres завершает запрос и по таймауту, и по Statement.cancel()
+    private static final String QUERY_CANCELED = "57014";
+
+    private static final ThreadLocal<Query<?>> CURRENT = new ThreadLocal<>();
+
+    @Value("${query-timeout.point-seconds:2}")
+    private int pointSeconds;
+
+    @Value("${query-timeout.table-seconds:15}")
+    private int tableSeconds;
+
+    @Value("${query-timeout.view-seconds:30}")
+    private int viewSeconds;
+
+    @Value("${query-timeout.report-seconds:60}")
+    private int reportSeconds;
+
+    private final MeterRegistry meters;
+
+    public QueryGuard(MeterRegistry meters) {
+        this.meters = meters;
+    }
+
+    // Запрос текущего потока (null - вне контроллера: фоновые задачи без таймаута)
+    static Query<?> current() {
+        return CURRENT.get();
+    }
+
+    // Короткая выборка в потоке запроса: только таймаут
+    <T> T run(Route route, Supplier<T> work) {
+        return new Query<>(route, work).execute();
+    }
+
+    // Долгая выборка: выполняется асинхронно и отменяется вместе с HTTP-запросом
+    <T> Callable<T> callable(Route route, Supplier<T> work) {
+        return new Query<>(route, work);
+    }
+
+    private int timeoutSeconds(Route route) {
+        return switch (route) {
+            case POINT -> pointSeconds;
+            case TABLE -> tableSeconds;
+            case VIEW -> viewSeconds;
+            case REPORT -> reportSeconds;
+        };
+    }
+
+    private static boolean isQueryCanceled(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql && QUERY_CANCELED.equals(sql.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    final class Query<T> implements Callable<T> {
+
+        private final Route route;
+        private final Supplier<T> work;
+
+        // Statement, выполняемый сейчас; доступ под монитором - cancel() зовется из потока контейнера
+        private Statement statement;
+        private boolean cancelled;
+        private boolean finished;
+
+        private Query(Route route, Supplier<T> work) {
+            this.route = route;
+            this.work = work;
+        }
+
+        @Override
+        public T call() {
+            return execute();
+        }
+
+        T execute() {
+            CURRENT.set(this);
+            try {
+                return work.get();
+            } catch (DataAccessException e) {
+                if (isCancelled()) {
+                    // Отменили сами: клиента уже нет или ему ответили по таймауту, результат не нужен
+                    return null;
+                }
+                if (isQueryCanceled(e)) {
+                    meters.counter("db.query.timeouts", "route", route.tag()).increment();
+                    log.warn("{} query exceeded {}s timeout", route.tag(), timeoutSeconds(route));
+                }
+                throw e;
+            } finally {
+                CURRENT.remove();
+                synchronized (this) {
+                    finished = true;
+                    statement = null;
+                }
+            }
+        }
+
+        synchronized void register(Statement stmt) throws SQLException {
+            if (cancelled) {
+                // Клиент ушел, пока запрос ждал потока или соединения
+                throw new SQLException("Query cancelled: client request is gone", QUERY_CANCELED);
+            }
+            stmt.setQueryTimeout(timeoutSeconds(route));
+            statement = stmt;
+        }
+
+        // Вызывается при обрыве или таймауте HTTP-запроса; после завершения запроса ничего не делает
+        synchronized void cancel(String reason) {
+            if (finished || cancelled) {
+                return;
+            }
+            cancelled = true;
+            meters.counter("db.query.cancellations", "route", route.tag(), "reason", reason).increment();
+            if (statement == null) {
+                return;
+            }
+            try {
+                statement.cancel();
+                log.info("Cancelled {} query: {}", route.tag(), reason);
+            } catch (SQLException e) {
+                log.warn("Failed to cancel {} query: {}", route.tag(), e.getMessage());
+            }
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
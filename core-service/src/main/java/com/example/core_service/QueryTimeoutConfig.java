@@ -0,0 +1,66 @@
+package com.example.core_service;
+
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.concurrent.Callable;
+
+@Configuration
+public class QueryTimeoutConfig {
+
+    // Вместо автоконфигурируемого JdbcTemplate; NamedParameterJdbcTemplate строится поверх него
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource, JdbcProperties properties) {
+        JdbcTemplate template = new GuardedJdbcTemplate(dataSource);
+        JdbcProperties.Template settings = properties.getTemplate();
+        template.setFetchSize(settings.getFetchSize());
+        template.setMaxRows(settings.getMaxRows());
+        if (settings.getQueryTimeout() != null) {
+            template.setQueryTimeout((int) settings.getQueryTimeout().getSeconds());
+        }
+        return template;
+    }
+
+    @Bean
+    public WebMvcConfigurer queryCancellationConfigurer(ClientDisconnectWatchdog disconnects) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.registerCallableInterceptors(disconnects, new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> Object handleTimeout(NativeWebRequest request, Callable<T> task) {
+                        cancel(task, "request-timeout");
+                        return RESULT_NONE;     // дальше стандартный ответ 503
+                    }
+
+                    // Ошибка асинхронной обработки в контейнере; обрыв соединения сюда не приходит,
+                    // его ловит ClientDisconnectWatchdog
+                    @Override
+                    public <T> Object handleError(NativeWebRequest request, Callable<T> task, Throwable t) {
+                        cancel(task, "async-error");
+                        return RESULT_NONE;
+                    }
+
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                        // Запрос закрыт, а выборка еще идет - результат уже некому отдать
+                        cancel(task, "abandoned");
+                    }
+                });
+            }
+        };
+    }
+
+    private static void cancel(Callable<?> task, String reason) {
+        if (task instanceof QueryGuard.Query<?> query) {
+            query.cancel(reason);
+        }
+    }
+}
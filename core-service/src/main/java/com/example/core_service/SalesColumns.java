@@ -0,0 +1,82 @@
+package com.example.core_service;
+
+import java.util.Arrays;
+
+/**
+ * Колоночное хранение sales_to_companies: плотные примитивные массивы по строкам.
+ * Количество - в тысячных тонны, цена - в копейках, дата - день эпохи.
+ * Удаление переносит последнюю строку на место удаленной, массивы остаются плотными.
+ */
+final class SalesColumns {
+
+    static final int TONS_SCALE = 3;
+    static final int PRICE_SCALE = 2;
+
+    int size;
+    int[] ids = new int[1024];
+    int[] mineral = new int[1024];
+    int[] buyer = new int[1024];
+    int[] day = new int[1024];
+    long[] tons = new long[1024];
+    long[] price = new long[1024];
+
+    // id -> номер строки + 1 (0 - нет строки); id у SERIAL плотные
+    private int[] rowById = new int[1024];
+
+    void upsert(int id, int mineralId, int buyerId, int epochDay, long scaledTons, long scaledPrice) {
+        int row = rowOf(id);
+        if (row < 0) {
+            ensureCapacity(size + 1);
+            row = size++;
+            ids[row] = id;
+            setRow(id, row);
+        }
+        mineral[row] = mineralId;
+        buyer[row] = buyerId;
+        day[row] = epochDay;
+        tons[row] = scaledTons;
+        price[row] = scaledPrice;
+    }
+
+    void remove(int id) {
+        int row = rowOf(id);
+        if (row < 0) {
+            return;
+        }
+        int last = --size;
+        if (row != last) {
+            ids[row] = ids[last];
+            mineral[row] = mineral[last];
+            buyer[row] = buyer[last];
+            day[row] = day[last];
+            tons[row] = tons[last];
+            price[row] = price[last];
+            setRow(ids[row], row);
+        }
+        rowById[id] = 0;
+    }
+
+    private int rowOf(int id) {
+        return id > 0 && id < rowById.length ? rowById[id] - 1 : -1;
+    }
+
+    private void setRow(int id, int row) {
+        if (id >= rowById.length) {
+            rowById = Arrays.copyOf(rowById, Math.max(id + 1, rowById.length * 2));
+        }
+        rowById[id] = row + 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newLength);
+        mineral = Arrays.copyOf(mineral, newLength);
+        buyer = Arrays.copyOf(buyer, newLength);
+        day = Arrays.copyOf(day, newLength);
+        tons = Arrays.copyOf(tons, newLength);
+        price = Arrays.copyOf(price, newLength);
+    }
+}
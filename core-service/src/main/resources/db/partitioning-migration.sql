@@ -0,0 +1,199 @@
+-- Перевод существующей БД (том, созданный init.sql до секционирования) на месячные секции.
+-- core-service выполняет этот файл при старте (partitioning.migrate=true); можно и вручную:
+--   psql -U coreuser -d coredb -f partitioning-migration.sql
+-- Один DO-блок - одна транзакция: при ошибке база остается в прежнем виде.
+-- Повторный запуск ничего не делает. На время переноса таблицы фактов заблокированы.
+--
+-- 1. shift_production.shift_date: добавляется и заполняется датой смены.
+-- 2. work_shifts, shift_production, sales_to_companies, если они еще обычные таблицы:
+--    переименование в <таблица>_legacy, секционированный родитель с тем же набором колонок,
+--    PK (id, ключ секционирования), месячные секции под имеющиеся данные, перенос строк,
+--    те же внешние ключи; последовательность id переходит к новой таблице.
+-- 3. Внешний ключ shift_production -> work_shifts становится составным (shift_id, shift_date).
+-- 4. Представления над этими таблицами пересоздаются; view_production_daily
+--    и view_team_performance - в варианте init.sql с соединением по составному ключу.
+-- 5. Индекс sales_to_companies (buyer_id), как в init.sql.
+-- Прочие индексы старых таблиц (кроме PK и внешних ключей) не переносятся.
+DO $migration$
+DECLARE
+    v_tables  CONSTANT TEXT[] := ARRAY['work_shifts', 'shift_production', 'sales_to_companies'];
+    v_keys    CONSTANT TEXT[] := ARRAY['shift_date', 'shift_date', 'sale_date'];
+    v_legacy  TEXT[] := ARRAY[]::TEXT[];
+    v_creates TEXT[] := ARRAY[]::TEXT[];
+    v_drops   TEXT[] := ARRAY[]::TEXT[];
+    v_table   TEXT;
+    v_key     TEXT;
+    v_seq     TEXT;
+    v_sql     TEXT;
+    v_month   DATE;
+    v_rec     RECORD;
+    v_i       INT;
+BEGIN
+    FOR v_i IN 1 .. array_length(v_tables, 1) LOOP
+        IF EXISTS (SELECT 1 FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+                   WHERE n.nspname = current_schema() AND c.relname = v_tables[v_i] AND c.relkind = 'r') THEN
+            v_legacy := v_legacy || v_tables[v_i];
+        END IF;
+    END LOOP;
+
+    IF to_regclass('shift_production') IS NOT NULL
+       AND NOT EXISTS (SELECT 1 FROM information_schema.columns
+                       WHERE table_schema = current_schema()
+                         AND table_name = 'shift_production' AND column_name = 'shift_date') THEN
+        ALTER TABLE shift_production ADD COLUMN shift_date DATE;
+        UPDATE shift_production sp SET shift_date = ws.shift_date FROM work_shifts ws WHERE ws.id = sp.shift_id;
+        ALTER TABLE shift_production ALTER COLUMN shift_date SET NOT NULL;
+        RAISE NOTICE 'shift_production.shift_date added';
+    END IF;
+
+    IF cardinality(v_legacy) = 0 THEN
+        RETURN;
+    END IF;
+
+    -- Представления (и зависящие от них) ссылаются на таблицы по oid: сохранить определения и удалить
+    FOR v_rec IN
+        WITH RECURSIVE deps AS (
+            SELECT DISTINCT rw.ev_class AS oid
+            FROM pg_depend d
+            JOIN pg_rewrite rw ON rw.oid = d.objid
+            WHERE d.classid = 'pg_rewrite'::regclass
+              AND d.refobjid = ANY (SELECT to_regclass(x)::oid FROM unnest(v_legacy) x)
+            UNION
+            SELECT rw.ev_class
+            FROM deps
+            JOIN pg_depend d ON d.refobjid = deps.oid AND d.classid = 'pg_rewrite'::regclass
+            JOIN pg_rewrite rw ON rw.oid = d.objid
+            WHERE rw.ev_class <> deps.oid
+        )
+        SELECT c.oid, format('%I.%I', n.nspname, c.relname) AS name,
+               CASE c.relkind WHEN 'm' THEN 'MATERIALIZED VIEW' ELSE 'VIEW' END AS kind
+        FROM deps
+        JOIN pg_class c ON c.oid = deps.oid
+        JOIN pg_namespace n ON n.oid = c.relnamespace
+        WHERE c.relkind IN ('v', 'm')
+        ORDER BY c.oid
+    LOOP
+        v_creates := v_creates || format('CREATE %s %s AS %s', v_rec.kind, v_rec.name, pg_get_viewdef(v_rec.oid));
+        v_drops := v_drops || format('DROP %s IF EXISTS %s CASCADE', v_rec.kind, v_rec.name);
+    END LOOP;
+    FOREACH v_sql IN ARRAY v_drops LOOP
+        EXECUTE v_sql;
+    END LOOP;
+
+    -- Новые секционированные таблицы; старые пока остаются под именем <таблица>_legacy
+    FOR v_i IN 1 .. array_length(v_tables, 1) LOOP
+        v_table := v_tables[v_i];
+        v_key := v_keys[v_i];
+        CONTINUE WHEN NOT v_table = ANY (v_legacy);
+
+        v_seq := pg_get_serial_sequence(v_table, 'id');
+        IF v_seq IS NOT NULL THEN
+            EXECUTE format('ALTER SEQUENCE %s OWNED BY NONE', v_seq);
+        END IF;
+        EXECUTE format('ALTER TABLE %I RENAME TO %I', v_table, v_table || '_legacy');
+        -- Имена индексов (PK, UNIQUE) общие на схему - освобождаем их для новой таблицы
+        FOR v_rec IN SELECT ic.relname FROM pg_index x JOIN pg_class ic ON ic.oid = x.indexrelid
+                     WHERE x.indrelid = to_regclass(v_table || '_legacy')
+        LOOP
+            EXECUTE format('ALTER INDEX %I RENAME TO %I', v_rec.relname, left(v_rec.relname, 55) || '_legacy');
+        END LOOP;
+
+        EXECUTE format('CREATE TABLE %I (LIKE %I INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING COMMENTS)'
+                       || ' PARTITION BY RANGE (%I)', v_table, v_table || '_legacy', v_key);
+        EXECUTE format('ALTER TABLE %I ADD PRIMARY KEY (id, %I)', v_table, v_key);
+        FOR v_month IN EXECUTE format('SELECT generate_series(lo, hi, INTERVAL ''1 month'')::date FROM ('
+                                      || 'SELECT date_trunc(''month'', min(%1$I)) lo, date_trunc(''month'', max(%1$I)) hi'
+                                      || ' FROM %2$I) b', v_key, v_table || '_legacy')
+        LOOP
+            EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                           v_table || '_p' || to_char(v_month, 'YYYYMM'), v_table,
+                           v_month, (v_month + INTERVAL '1 month')::date);
+        END LOOP;
+        EXECUTE format('INSERT INTO %I SELECT * FROM %I', v_table, v_table || '_legacy');
+        IF v_seq IS NOT NULL THEN
+            EXECUTE format('ALTER SEQUENCE %s OWNED BY %I.id', v_seq, v_table);
+        END IF;
+        RAISE NOTICE '% is partitioned by %', v_table, v_key;
+    END LOOP;
+
+    -- Внешние ключи старых таблиц, кроме ссылок между таблицами фактов
+    FOREACH v_table IN ARRAY v_legacy LOOP
+        FOR v_rec IN SELECT conname, pg_get_constraintdef(oid) AS def
+                     FROM pg_constraint
+                     WHERE conrelid = to_regclass(v_table || '_legacy') AND contype = 'f'
+                       AND confrelid <> ALL (SELECT to_regclass(x || '_legacy')::oid FROM unnest(v_legacy) x)
+                       AND confrelid <> ALL (SELECT to_regclass(x)::oid FROM unnest(v_tables) x)
+        LOOP
+            EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I %s', v_table, v_rec.conname, v_rec.def);
+        END LOOP;
+    END LOOP;
+
+    -- Добыча ссылается на смену составным ключом: перенос смены переносит и добычу
+    FOR v_rec IN SELECT conname FROM pg_constraint
+                 WHERE conrelid = 'shift_production'::regclass AND contype = 'f'
+                   AND confrelid = 'work_shifts'::regclass
+    LOOP
+        EXECUTE format('ALTER TABLE shift_production DROP CONSTRAINT %I', v_rec.conname);
+    END LOOP;
+    ALTER TABLE shift_production
+        ADD FOREIGN KEY (shift_id, shift_date) REFERENCES work_shifts (id, shift_date)
+        ON UPDATE CASCADE ON DELETE NO ACTION;
+
+    -- shift_production первой: она ссылается на work_shifts_legacy
+    FOREACH v_table IN ARRAY ARRAY['shift_production', 'work_shifts', 'sales_to_companies'] LOOP
+        IF v_table = ANY (v_legacy) THEN
+            EXECUTE format('DROP TABLE %I', v_table || '_legacy');
+        END IF;
+    END LOOP;
+
+    FOREACH v_sql IN ARRAY v_creates LOOP
+        EXECUTE v_sql;
+    END LOOP;
+
+    IF to_regclass('view_production_daily') IS NOT NULL THEN
+        CREATE OR REPLACE VIEW view_production_daily AS
+        SELECT
+            sp.id,
+            ws.shift_date,
+            od.name AS deposit_name,
+            mt.foreman_name,
+            CONCAT(EXTRACT(HOUR FROM ws.start_time), ':',
+                   LPAD(EXTRACT(MINUTE FROM ws.start_time)::text, 2, '0')) AS shift_start,
+            CONCAT(EXTRACT(HOUR FROM ws.end_time), ':',
+                   LPAD(EXTRACT(MINUTE FROM ws.end_time)::text, 2, '0')) AS shift_end,
+            sp.tons_of_ore,
+            CASE WHEN sp.equipment_damaged THEN 'Да' ELSE 'Нет' END AS equipment_damage,
+            sp.notes
+        FROM shift_production sp
+        JOIN work_shifts ws ON sp.shift_id = ws.id AND sp.shift_date = ws.shift_date
+        JOIN ore_deposits od ON ws.ore_deposit_id = od.id
+        JOIN mining_teams mt ON ws.mining_team_id = mt.id
+        WHERE sp.shift_date >= CURRENT_DATE - 30
+          AND ws.shift_date >= CURRENT_DATE - 30
+        ORDER BY ws.shift_date DESC;
+    END IF;
+
+    IF to_regclass('view_team_performance') IS NOT NULL THEN
+        CREATE OR REPLACE VIEW view_team_performance AS
+        SELECT
+            mt.id AS team_id,
+            tn.name AS team_name,
+            mt.foreman_name,
+            mt.foreman_phone,
+            COUNT(ws.id) AS total_shifts,
+            SUM(sp.tons_of_ore) AS total_production,
+            ROUND(AVG(sp.tons_of_ore), 2) AS avg_daily_production,
+            SUM(CASE WHEN sp.equipment_damaged THEN 1 ELSE 0 END) AS damage_incidents
+        FROM mining_teams mt
+        JOIN teams t ON mt.team_id = t.id
+        JOIN team_names tn ON t.name_id = tn.id
+        LEFT JOIN work_shifts ws ON mt.id = ws.mining_team_id
+        LEFT JOIN shift_production sp ON ws.id = sp.shift_id AND ws.shift_date = sp.shift_date
+        WHERE mt.is_active = true
+        GROUP BY mt.id, tn.name, mt.foreman_name, mt.foreman_phone
+        ORDER BY total_production DESC;
+    END IF;
+
+    CREATE INDEX IF NOT EXISTS sales_to_companies_buyer_id_idx ON sales_to_companies (buyer_id);
+END
+$migration$;
@@ -0,0 +1,245 @@
+package com.example.core_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Сверка отчетов движка с SQL, который они заменяют (DbController без движка), на Postgres 15
+ * со схемой и данными init.sql плюс пограничные строки: смена без добычи, покупатель без продаж
+ * и с продажами только вне периода, отрицательная продажа, выручка больше 2^64, бригада без бригадира
+ * и две бригады с одинаковыми (название, бригадир).
+ * Случайные тонны и цены init.sql точнее, чем хранит движок: на них он не включается,
+ * сверка идет на тех же данных, округленных до 3 и 2 знаков.
+ */
+class AnalyticsEngineTest {
+
+	// Месяц пограничных строк: внутри секций init.sql
+	private static final YearMonth EDGE = YearMonth.now().minusMonths(2);
+
+	private static EmbeddedPostgres postgres;
+	private static NamedParameterJdbcTemplate jdbc;
+	private static AnalyticsEngine engine;
+	private static DbController sql;
+	private static QueryGuard queries;
+	// Загружен по исходным данным init.sql
+	private static AnalyticsEngine unrounded;
+
+	@BeforeAll
+	static void start() throws Exception {
+		postgres = EmbeddedPostgres.start();
+		// init.sql рассчитан на базу coredb (GRANT/ALTER DATABASE)
+		new NamedParameterJdbcTemplate(postgres.getPostgresDatabase()).getJdbcTemplate().execute("CREATE DATABASE coredb");
+		jdbc = new NamedParameterJdbcTemplate(postgres.getDatabase("postgres", "coredb"));
+		jdbc.getJdbcTemplate().execute(Files.readString(Path.of("..", "init.sql")));
+		unrounded = enabledEngine();
+
+		// Движок хранит тонны с 3 знаками и цены с 2 (см. AnalyticsEngine)
+		jdbc.getJdbcTemplate().execute("""
+				UPDATE sales_to_companies SET sold_tons = round(sold_tons, 3), sale_price_per_ton = round(sale_price_per_ton, 2);
+				UPDATE shift_production SET tons_of_ore = round(tons_of_ore, 3);
+				""");
+		insertEdgeRows();
+
+		engine = enabledEngine();
+
+		AnalyticsEngine disabled = new AnalyticsEngine(jdbc);
+		queries = new QueryGuard(new SimpleMeterRegistry());
+		sql = new DbController(jdbc, new PartitionManager(jdbc, disabled), disabled, queries);
+	}
+
+	private static AnalyticsEngine enabledEngine() {
+		AnalyticsEngine loaded = new AnalyticsEngine(jdbc);
+		ReflectionTestUtils.setField(loaded, "enabled", true);
+		loaded.reload();
+		return loaded;
+	}
+
+	@AfterAll
+	static void stop() throws Exception {
+		postgres.close();
+	}
+
+	private static void insertEdgeRows() {
+		LocalDate day = EDGE.atDay(3);
+		MapSqlParameterSource p = new MapSqlParameterSource()
+				.addValue("day", day)
+				.addValue("before", EDGE.atDay(1).minusDays(40));
+		jdbc.update("""
+				INSERT INTO buyers_companies (name, license_number, contact_name, contact_phone) VALUES
+				    ('Без продаж', 900001, NULL, NULL),
+				    ('Вне периода', 900002, 'Тест', '+70000000000')
+				""", p);
+		jdbc.update("""
+				INSERT INTO sales_to_companies (owner_id, buyer_id, mineral_id, sale_date, sold_tons, sale_price_per_ton) VALUES
+				    (1, (SELECT id FROM buyers_companies WHERE license_number = 900002), 1, :before, 10, 1000),
+				    (1, 1, 2, :day, -5.5, 1000.25),
+				    (1, 2, 3, :day, 3000000, 30000000),
+				    (1, 2, 3, :day, 3000000.001, 30000000.01)
+				""", p);
+		// Бригада без бригадира и двойник бригады 1 (та же команда и тот же бригадир)
+		jdbc.update("""
+				INSERT INTO mining_teams (team_id, foreman_name, foreman_phone, is_active)
+				SELECT 1, NULL, NULL, true
+				UNION ALL
+				SELECT team_id, foreman_name, foreman_phone, true FROM mining_teams WHERE id = 1
+				""", p);
+		jdbc.update("""
+				INSERT INTO work_shifts (mining_team_id, ore_deposit_id, shift_date, start_time, end_time)
+				SELECT mt.id, 1, :day + n, TIME '06:00', TIME '18:00'
+				FROM mining_teams mt, generate_series(0, 1) n
+				WHERE mt.id IN (1, (SELECT max(id) FROM mining_teams), (SELECT max(id) - 1 FROM mining_teams))
+				""", p);
+		// Добыча на части новых смен; остальные остаются без добычи
+		jdbc.update("""
+				INSERT INTO shift_production (shift_id, shift_date, mineral_id, tons_of_ore, equipment_damaged)
+				SELECT ws.id, ws.shift_date, 1 + ws.id % 3, 100.125 + ws.id, ws.id % 2 = 0
+				FROM work_shifts ws
+				WHERE ws.shift_date = :day
+				""", p);
+	}
+
+	static Stream<Arguments> reports() {
+		String from = EDGE.atDay(1).toString();
+		String to = EDGE.atEndOfMonth().toString();
+		int year = EDGE.getYear();
+		int month = EDGE.getMonthValue();
+		return Stream.of(
+				Arguments.of("sales-by-mineral", null, null, null, null, List.of("total_revenue")),
+				Arguments.of("sales-by-mineral", from, to, null, null, List.of("total_revenue")),
+				Arguments.of("buyer-statistics", null, null, null, null, List.of("total_spent")),
+				Arguments.of("buyer-statistics", from, to, null, null, List.of("total_spent")),
+				Arguments.of("monthly-production", null, null, null, null, List.of("year", "month_number")),
+				Arguments.of("monthly-production", null, null, year, null, List.of("month", "total_production")),
+				Arguments.of("monthly-production", null, null, year, month, List.of("total_production")),
+				Arguments.of("team-efficiency", null, null, null, null, List.of("year", "month", "total_production")),
+				Arguments.of("team-efficiency", null, null, year, month, List.of("total_production"))
+		);
+	}
+
+	@ParameterizedTest(name = "{0} from={1} to={2} year={3} month={4}")
+	@MethodSource("reports")
+	void reportMatchesSql(String report, String from, String to, Integer year, Integer month, List<String> orderBy)
+			throws Exception {
+		List<Map<String, Object>> expected = sql.getReport(report, from, to, year, month, null, null).call();
+		List<Map<String, Object>> actual = engine.report(report, from, to, year, month);
+
+		assertThat(expected).isNotEmpty();
+		assertSameResult(expected, actual, orderBy);
+	}
+
+	@Test
+	void mineralPricesViewMatchesSql() throws Exception {
+		List<Map<String, Object>> expected = sql.getView("view_mineral_prices").call();
+		List<Map<String, Object>> actual = engine.view("view_mineral_prices");
+
+		assertSameResult(expected, actual, List.of("mineral_name"));
+	}
+
+	@Test
+	void unroundedDataFallsBackToDatabase() throws Exception {
+		assertThat(unrounded.report("sales-by-mineral", null, null, null, null)).isNull();
+		assertThat(unrounded.view("view_mineral_prices")).isNull();
+
+		DbController controller = new DbController(jdbc, new PartitionManager(jdbc, unrounded), unrounded, queries);
+		assertThat(controller.getReport("sales-by-mineral", null, null, null, null, null, null).call())
+				.isEqualTo(sql.getReport("sales-by-mineral", null, null, null, null, null, null).call());
+	}
+
+	@Test
+	void writeWithExtraPrecisionFallsBackToDatabase() {
+		AnalyticsEngine written = enabledEngine();
+		assertThat(written.report("sales-by-mineral", null, null, null, null)).isNotNull();
+
+		Integer id = jdbc.queryForObject("""
+				INSERT INTO sales_to_companies (owner_id, buyer_id, mineral_id, sale_date, sold_tons, sale_price_per_ton)
+				VALUES (1, 1, 1, CURRENT_DATE, 1.0005, 100) RETURNING id
+				""", Map.of(), Integer.class);
+		try {
+			written.onWrite("sales_to_companies", id);
+			assertThat(written.report("sales-by-mineral", null, null, null, null)).isNull();
+		} finally {
+			jdbc.update("DELETE FROM sales_to_companies WHERE id = :id", Map.of("id", id));
+		}
+	}
+
+	@Test
+	void edgeCasesArePresent() {
+		List<Map<String, Object>> buyers = engine.report("buyer-statistics",
+				EDGE.atDay(1).toString(), EDGE.atEndOfMonth().toString(), null, null);
+		assertThat(buyers).extracting(r -> r.get("company_name")).contains("Без продаж").doesNotContain("Вне периода");
+
+		List<Map<String, Object>> production = engine.report("monthly-production", null, null,
+				EDGE.getYear(), EDGE.getMonthValue());
+		assertThat(production).anyMatch(r -> r.get("mineral_name") == null);
+
+		List<Map<String, Object>> teams = engine.report("team-efficiency", null, null, EDGE.getYear(), EDGE.getMonthValue());
+		assertThat(teams).anyMatch(r -> r.get("foreman_name") == null);
+	}
+
+	@Test
+	void writesThroughOnWriteKeepReportsInSync() throws Exception {
+		Integer saleId = jdbc.queryForObject("SELECT min(id) FROM sales_to_companies", Map.of(), Integer.class);
+		jdbc.update("UPDATE sales_to_companies SET sold_tons = sold_tons + 1 WHERE id = :id", Map.of("id", saleId));
+		engine.onWrite("sales_to_companies", saleId);
+
+		Integer productionId = jdbc.queryForObject("SELECT min(id) FROM shift_production", Map.of(), Integer.class);
+		jdbc.update("DELETE FROM shift_production WHERE id = :id", Map.of("id", productionId));
+		engine.onWrite("shift_production", productionId);
+
+		assertSameResult(sql.getReport("sales-by-mineral", null, null, null, null, null, null).call(),
+				engine.report("sales-by-mineral", null, null, null, null), List.of("total_revenue"));
+		assertSameResult(sql.getReport("monthly-production", null, null, null, null, null, null).call(),
+				engine.report("monthly-production", null, null, null, null), List.of("year", "month_number"));
+	}
+
+	// Те же строки (в любом порядке при равных ключах) и тот же порядок ключей сортировки отчета
+	private static void assertSameResult(List<Map<String, Object>> expected, List<Map<String, Object>> actual,
+										 List<String> orderBy) {
+		assertThat(actual).as("engine answers the report").isNotNull();
+		List<Map<String, Object>> e = normalize(expected);
+		List<Map<String, Object>> a = normalize(actual);
+		assertThat(a).containsExactlyInAnyOrderElementsOf(e);
+		assertThat(a).extracting(r -> orderBy.stream().map(r::get).toList())
+				.containsExactlyElementsOf(e.stream().map(r -> orderBy.stream().map(r::get).toList()).toList());
+	}
+
+	// Числа сравниваются по значению (bigint/numeric, 0 и 0.00), даты - как LocalDate
+	private static List<Map<String, Object>> normalize(List<Map<String, Object>> rows) {
+		List<Map<String, Object>> result = new ArrayList<>();
+		for (Map<String, Object> row : rows) {
+			Map<String, Object> normalized = new TreeMap<>();
+			row.forEach((column, value) -> {
+				if (value instanceof Number number) {
+					value = new BigDecimal(number.toString()).stripTrailingZeros();
+				} else if (value instanceof java.sql.Date date) {
+					value = date.toLocalDate();
+				}
+				normalized.put(column, value);
+			});
+			result.add(normalized);
+		}
+		return result;
+	}
+}
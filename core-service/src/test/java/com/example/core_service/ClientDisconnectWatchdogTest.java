@@ -0,0 +1,120 @@
+package com.example.core_service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Клиент закрывает соединение посреди долгой выборки: запрос должен быть отменен в Postgres
+ * задолго до конца pg_sleep и посчитан как db.query.cancellations{reason=client-disconnect}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"partitioning.enabled=false",
+		"query-timeout.disconnect-check-ms=100"
+})
+class ClientDisconnectWatchdogTest {
+
+	private static final EmbeddedPostgres postgres = start();
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private MeterRegistry meters;
+
+	@Autowired
+	private JdbcTemplate jdbc;
+
+	private static EmbeddedPostgres start() {
+		try {
+			EmbeddedPostgres pg = EmbeddedPostgres.start();
+			new JdbcTemplate(pg.getPostgresDatabase()).execute("""
+					CREATE VIEW view_slow AS SELECT 1 AS id FROM pg_sleep(30);
+					CREATE TABLE minerals (id int PRIMARY KEY, name varchar(50));
+					INSERT INTO minerals VALUES (1, 'Золото');
+					""");
+			return pg;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@DynamicPropertySource
+	static void datasource(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+		registry.add("spring.datasource.username", () -> "postgres");
+		registry.add("spring.datasource.password", () -> "");
+	}
+
+	@AfterAll
+	static void stop() throws IOException {
+		postgres.close();
+	}
+
+	@Test
+	void closingConnectionCancelsQuery() throws Exception {
+		double before = cancellations("client-disconnect");
+		try (Socket socket = new Socket("localhost", port)) {
+			OutputStream out = socket.getOutputStream();
+			out.write("GET /api/views/view_slow HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			awaitRunning(true);
+		}
+
+		long closed = System.nanoTime();
+		awaitRunning(false);
+		assertThat((System.nanoTime() - closed) / 1_000_000).isLessThan(5_000);
+		assertThat(cancellations("client-disconnect")).isEqualTo(before + 1);
+	}
+
+	@Test
+	void completedQueryIsNotCancelled() throws Exception {
+		double before = cancellations(null);
+
+		String body = new RestTemplate().getForObject("http://localhost:" + port + "/api/tables/minerals", String.class);
+		// Проверки соединения идут каждые 100 мс; после ответа запрос отслеживаться не должен
+		Thread.sleep(500);
+
+		assertThat(body).contains("Золото");
+		assertThat(cancellations(null)).isEqualTo(before);
+	}
+
+	// null - по всем причинам
+	private double cancellations(String reason) {
+		return meters.find("db.query.cancellations").counters().stream()
+				.filter(c -> reason == null || reason.equals(c.getId().getTag("reason")))
+				.mapToDouble(Counter::count)
+				.sum();
+	}
+
+	// Ждем, пока выборка из view_slow появится в Postgres или исчезнет оттуда
+	private void awaitRunning(boolean running) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			Integer active = jdbc.queryForObject("""
+					SELECT count(*) FROM pg_stat_activity
+					WHERE state = 'active' AND query LIKE '%FROM view_slow%' AND pid <> pg_backend_pid()
+					""", Integer.class);
+			if ((active > 0) == running) {
+				return;
+			}
+			Thread.sleep(100);
+		}
+		throw new AssertionError("view_slow query " + (running ? "did not start" : "is still running"));
+	}
+}
@@ -0,0 +1,127 @@
+package com.example.core_service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GroupTableTest {
+
+	@Test
+	void negativeProductBorrowsFromHighWord() {
+		GroupTable.Acc acc = new GroupTable.Acc();
+		acc.addRevenue(10);
+		acc.addRevenue(-3);
+
+		assertThat(acc.revenue()).isEqualTo(BigInteger.valueOf(7));
+		assertThat(acc.revenueHi).isZero();
+	}
+
+	@Test
+	void revenueGoesNegative() {
+		GroupTable.Acc acc = new GroupTable.Acc();
+		acc.addRevenue(5);
+		acc.addRevenue(-8);
+
+		assertThat(acc.revenue()).isEqualTo(BigInteger.valueOf(-3));
+	}
+
+	@Test
+	void revenueOverflowsSixtyFourBitsBothWays() {
+		GroupTable.Acc positive = new GroupTable.Acc();
+		GroupTable.Acc negative = new GroupTable.Acc();
+		for (int i = 0; i < 5; i++) {
+			positive.addRevenue(Long.MAX_VALUE);
+			negative.addRevenue(Long.MIN_VALUE);
+		}
+
+		assertThat(positive.revenue()).isEqualTo(BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.valueOf(5)));
+		assertThat(negative.revenue()).isEqualTo(BigInteger.valueOf(Long.MIN_VALUE).multiply(BigInteger.valueOf(5)));
+	}
+
+	@Test
+	void mergeMatchesExactSum() {
+		SplittableRandom random = new SplittableRandom(7);
+		GroupTable.Acc left = new GroupTable.Acc();
+		GroupTable.Acc right = new GroupTable.Acc();
+		BigInteger expected = BigInteger.ZERO;
+		for (int i = 0; i < 10_000; i++) {
+			long product = random.nextLong();
+			(i % 3 == 0 ? left : right).addRevenue(product);
+			expected = expected.add(BigInteger.valueOf(product));
+		}
+
+		left.merge(right);
+
+		assertThat(left.revenue()).isEqualTo(expected);
+	}
+
+	@Test
+	void mergeCombinesAllAggregates() {
+		GroupTable.Acc left = new GroupTable.Acc();
+		left.count = 2;
+		left.sumTons = 10;
+		left.minPrice = 5;
+		left.maxPrice = 7;
+		left.minDay = 100;
+		left.maxDay = 120;
+		GroupTable.Acc right = new GroupTable.Acc();
+		right.count = 1;
+		right.sumTons = -4;
+		right.minPrice = 3;
+		right.maxPrice = 6;
+		right.minDay = 90;
+		right.maxDay = 110;
+		right.buyers = new java.util.BitSet();
+		right.buyers.set(42);
+
+		left.merge(right);
+
+		assertThat(left.count).isEqualTo(3);
+		assertThat(left.sumTons).isEqualTo(6);
+		assertThat(left.minPrice).isEqualTo(3);
+		assertThat(left.maxPrice).isEqualTo(7);
+		assertThat(left.minDay).isEqualTo(90);
+		assertThat(left.maxDay).isEqualTo(120);
+		assertThat(left.buyers.get(42)).isTrue();
+	}
+
+	@Test
+	void getReturnsSameGroupAcrossGrowth() {
+		GroupTable groups = new GroupTable();
+		Map<Long, GroupTable.Acc> expected = new HashMap<>();
+		SplittableRandom random = new SplittableRandom(11);
+		for (int i = 0; i < 5_000; i++) {
+			long key = i % 10 == 0 ? -i : random.nextLong();
+			expected.put(key, groups.get(key));
+		}
+		expected.put(0L, groups.get(0L));
+
+		assertThat(groups.size()).isEqualTo(expected.size());
+		expected.forEach((key, acc) -> assertThat(groups.get(key)).isSameAs(acc));
+		Map<Long, GroupTable.Acc> visited = new HashMap<>();
+		groups.forEach(visited::put);
+		assertThat(visited).isEqualTo(expected);
+	}
+
+	@Test
+	void mergeFromAddsMatchingGroups() {
+		GroupTable left = new GroupTable();
+		left.get(1).count = 1;
+		left.get(2).count = 2;
+		GroupTable right = new GroupTable();
+		right.get(2).count = 5;
+		right.get(3).count = 3;
+
+		left.mergeFrom(right);
+
+		assertThat(left.size()).isEqualTo(3);
+		assertThat(left.get(1).count).isEqualTo(1);
+		assertThat(left.get(2).count).isEqualTo(7);
+		assertThat(left.get(3).count).isEqualTo(3);
+	}
+}
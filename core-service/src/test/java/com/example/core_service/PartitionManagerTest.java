@@ -0,0 +1,103 @@
+package com.example.core_service;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Срок хранения на схеме init.sql: секции старше срока уходят в архив (в том числе когда месяц
+ * там уже есть), а запись с датой вне окна хранения отклоняется без DDL.
+ */
+class PartitionManagerTest {
+
+	private static final int RETENTION = 6;
+
+	private static EmbeddedPostgres postgres;
+	private static NamedParameterJdbcTemplate jdbc;
+
+	@BeforeAll
+	static void start() throws Exception {
+		postgres = EmbeddedPostgres.start();
+		new NamedParameterJdbcTemplate(postgres.getPostgresDatabase()).getJdbcTemplate().execute("CREATE DATABASE coredb");
+		jdbc = new NamedParameterJdbcTemplate(postgres.getDatabase("postgres", "coredb"));
+		jdbc.getJdbcTemplate().execute(Files.readString(Path.of("..", "init.sql")));
+	}
+
+	@AfterAll
+	static void stop() throws Exception {
+		postgres.close();
+	}
+
+	@Test
+	void retiredMonthIsArchivedUnderFreeNameAndRejectedOnWrite() {
+		YearMonth cutoff = YearMonth.now().minusMonths(RETENTION);
+		YearMonth expired = cutoff.minusMonths(1);
+		String partition = "sales_to_companies_p" + expired.toString().replace("-", "");
+		int total = count("sales_to_companies");
+		int expiredRows = jdbc.queryForObject("SELECT count(*) FROM " + partition, Map.of(), Integer.class);
+		assertThat(expiredRows).isPositive();
+		// Тот же месяц уже в архиве: его секцию когда-то создали заново после отсоединения
+		jdbc.getJdbcTemplate().execute("CREATE SCHEMA archive; CREATE TABLE archive." + partition
+				+ " (id int, sale_date date, PRIMARY KEY (id, sale_date))");
+
+		PartitionManager partitions = new PartitionManager(jdbc, new AnalyticsEngine(jdbc));
+		ReflectionTestUtils.setField(partitions, "enabled", true);
+		ReflectionTestUtils.setField(partitions, "migrate", true);
+		ReflectionTestUtils.setField(partitions, "monthsAhead", 3);
+		ReflectionTestUtils.setField(partitions, "retentionMonths", RETENTION);
+		ReflectionTestUtils.setField(partitions, "retentionAction", "detach");
+		ReflectionTestUtils.setField(partitions, "archiveSchema", "archive");
+		partitions.maintain();
+
+		assertThat(jdbc.queryForObject("SELECT count(*) FROM archive." + partition + "_1", Map.of(), Integer.class))
+				.isEqualTo(expiredRows);
+		int archived = jdbc.queryForObject("""
+				SELECT coalesce(sum((xpath('/row/c/text()', query_to_xml('SELECT count(*) AS c FROM archive.' || c.relname, false, true, '')))[1]::text::int), 0)
+				FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+				WHERE n.nspname = 'archive' AND c.relkind = 'r' AND c.relname LIKE 'sales\\_to\\_companies\\_p%' AND c.relname <> :existing
+				""", Map.of("existing", partition), Integer.class);
+		assertThat(count("sales_to_companies") + archived).isEqualTo(total);
+
+		// Месяц вне окна хранения и слишком далекий месяц - 400, секции не создаются
+		assertThatThrownBy(() -> partitions.prepareRow("sales_to_companies", sale(expired.atDay(10).toString())))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+		assertThatThrownBy(() -> partitions.prepareRow("sales_to_companies", sale(YearMonth.now().plusMonths(4).atDay(1).toString())))
+				.isInstanceOfSatisfying(ResponseStatusException.class,
+						e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+		assertThat(jdbc.queryForObject("SELECT to_regclass(:name) IS NULL", Map.of("name", partition), Boolean.class)).isTrue();
+
+		// Первый месяц окна пишется как обычно
+		Map<String, Object> row = sale(cutoff.atDay(1).toString());
+		partitions.prepareRow("sales_to_companies", row);
+		jdbc.update("""
+				INSERT INTO sales_to_companies (owner_id, buyer_id, mineral_id, sale_date, sold_tons, sale_price_per_ton)
+				VALUES (1, 1, 1, CAST(:sale_date AS date), 1, 1)
+				""", new MapSqlParameterSource(row));
+	}
+
+	private static int count(String table) {
+		return jdbc.queryForObject("SELECT count(*) FROM " + table, Map.of(), Integer.class);
+	}
+
+	private static Map<String, Object> sale(String date) {
+		Map<String, Object> row = new HashMap<>();
+		row.put("sale_date", date);
+		return row;
+	}
+}
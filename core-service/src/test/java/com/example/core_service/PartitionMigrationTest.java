@@ -0,0 +1,154 @@
+package com.example.core_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Том, созданный init.sql до секционирования (db/legacy-init.sql): до миграции отчеты и запись
+ * работают по старой схеме, после миграции таблицы фактов секционированы, данные, представления
+ * и результаты отчетов те же, а повторный запуск скрипта ничего не меняет.
+ */
+class PartitionMigrationTest {
+
+	private static final List<String> TABLES = List.of("work_shifts", "shift_production", "sales_to_companies");
+
+	private static EmbeddedPostgres postgres;
+	private static NamedParameterJdbcTemplate jdbc;
+
+	@BeforeAll
+	static void start() throws Exception {
+		postgres = EmbeddedPostgres.start();
+		new NamedParameterJdbcTemplate(postgres.getPostgresDatabase()).getJdbcTemplate().execute("CREATE DATABASE coredb");
+		jdbc = new NamedParameterJdbcTemplate(postgres.getDatabase("postgres", "coredb"));
+		jdbc.getJdbcTemplate().execute(new ClassPathResource("db/legacy-init.sql").getContentAsString(StandardCharsets.UTF_8));
+	}
+
+	@AfterAll
+	static void stop() throws Exception {
+		postgres.close();
+	}
+
+	@Test
+	void legacyVolumeIsMigrated() throws Exception {
+		AnalyticsEngine analytics = new AnalyticsEngine(jdbc);
+		PartitionManager partitions = new PartitionManager(jdbc, analytics);
+		ReflectionTestUtils.setField(partitions, "enabled", true);
+		ReflectionTestUtils.setField(partitions, "monthsAhead", 3);
+		ReflectionTestUtils.setField(partitions, "migrate", false);
+		DbController controller = new DbController(jdbc, partitions, analytics, new QueryGuard(new SimpleMeterRegistry()));
+
+		// Старая схема: без миграции отчеты идут без shift_date, запись ее не передает
+		partitions.maintain();
+		assertThat(partitions.hasProductionShiftDate()).isFalse();
+		Integer shiftId = jdbc.queryForObject("SELECT min(id) FROM work_shifts", Map.of(), Integer.class);
+		controller.createRow("shift_production", row("shift_id", shiftId, "shift_date", "2000-01-01",
+				"mineral_id", 1, "tons_of_ore", 10, "equipment_damaged", false));
+		Map<String, List<Map<String, Object>>> before = reports(controller);
+		Map<String, Integer> counts = counts();
+
+		ReflectionTestUtils.setField(partitions, "migrate", true);
+		partitions.maintain();
+
+		assertThat(partitions.hasProductionShiftDate()).isTrue();
+		for (String table : TABLES) {
+			assertThat(relkind(table)).as(table).isEqualTo("p");
+		}
+		assertThat(counts()).isEqualTo(counts);
+		assertThat(jdbc.queryForObject("""
+				SELECT count(*) FROM shift_production sp
+				JOIN work_shifts ws ON ws.id = sp.shift_id AND ws.shift_date = sp.shift_date
+				""", Map.of(), Integer.class)).isEqualTo(counts.get("shift_production"));
+		assertThat(jdbc.queryForList("""
+				SELECT pg_get_constraintdef(oid) FROM pg_constraint
+				WHERE conrelid = 'shift_production'::regclass AND confrelid = 'work_shifts'::regclass
+				""", Map.of(), String.class))
+				.containsExactly("FOREIGN KEY (shift_id, shift_date) REFERENCES work_shifts(id, shift_date) ON UPDATE CASCADE");
+		assertThat(jdbc.queryForObject("SELECT count(*) FROM pg_class WHERE relname LIKE '%\\_legacy'", Map.of(), Integer.class))
+				.isZero();
+		assertThat(jdbc.queryForObject("SELECT to_regclass('sales_to_companies_buyer_id_idx') IS NOT NULL", Map.of(), Boolean.class))
+				.isTrue();
+
+		// Те же результаты, теперь по составному ключу
+		Map<String, List<Map<String, Object>>> after = reports(controller);
+		before.forEach((report, rows) -> assertThat(after.get(report)).as(report).containsExactlyInAnyOrderElementsOf(rows));
+		for (String view : List.of("view_sales_report", "view_production_daily", "view_team_performance", "view_mineral_prices",
+				"view_deposits_summary", "view_reserves_details")) {
+			controller.getView(view).call();
+		}
+
+		// Последовательности id остались у таблиц, секции на текущий месяц созданы при обслуживании
+		Integer maxShift = jdbc.queryForObject("SELECT max(id) FROM work_shifts", Map.of(), Integer.class);
+		Object newShift = controller.createRow("work_shifts", row("mining_team_id", 1, "ore_deposit_id", 1,
+				"shift_date", LocalDate.now().toString(), "start_time", "06:00", "end_time", "18:00")).get("id");
+		assertThat(((Number) newShift).intValue()).isGreaterThan(maxShift);
+		controller.createRow("shift_production", row("shift_id", newShift, "mineral_id", 1,
+				"tons_of_ore", 5, "equipment_damaged", true));
+		assertThat(jdbc.queryForObject("SELECT shift_date FROM shift_production WHERE shift_id = :id",
+				Map.of("id", newShift), LocalDate.class)).isEqualTo(LocalDate.now());
+
+		// Повторный запуск - без изменений
+		List<String> partitionsBefore = partitionNames();
+		jdbc.getJdbcTemplate().execute(new ClassPathResource("db/partitioning-migration.sql")
+				.getContentAsString(StandardCharsets.UTF_8));
+		assertThat(partitionNames()).isEqualTo(partitionsBefore);
+	}
+
+	private static Map<String, List<Map<String, Object>>> reports(DbController controller) throws Exception {
+		Map<String, List<Map<String, Object>>> result = new LinkedHashMap<>();
+		LocalDate month = jdbc.queryForObject("SELECT max(shift_date) FROM work_shifts", Map.of(), LocalDate.class);
+		int year = month.getYear();
+		String from = month.minusYears(1).toString();
+		String to = month.toString();
+		result.put("monthly-production", controller.getReport("monthly-production", null, null, null, null, null, null).call());
+		result.put("monthly-production year", controller.getReport("monthly-production", null, null, year, null, null, null).call());
+		result.put("monthly-production month", controller.getReport("monthly-production", null, null, year,
+				month.getMonthValue(), null, null).call());
+		result.put("team-efficiency", controller.getReport("team-efficiency", null, null, null, null, null, null).call());
+		result.put("team-efficiency month", controller.getReport("team-efficiency", null, null, year,
+				month.getMonthValue(), null, null).call());
+		result.put("equipment-damage", controller.getReport("equipment-damage", null, null, null, null, null, null).call());
+		result.put("equipment-damage period", controller.getReport("equipment-damage", from, to, null, null, null, null).call());
+		result.values().forEach(rows -> assertThat(rows).isNotEmpty());
+		return result;
+	}
+
+	private static Map<String, Integer> counts() {
+		Map<String, Integer> counts = new HashMap<>();
+		for (String table : TABLES) {
+			counts.put(table, jdbc.queryForObject("SELECT count(*) FROM " + table, Map.of(), Integer.class));
+		}
+		return counts;
+	}
+
+	private static String relkind(String table) {
+		return jdbc.queryForObject("SELECT relkind::text FROM pg_class WHERE oid = CAST(:table AS regclass)",
+				Map.of("table", table), String.class);
+	}
+
+	private static List<String> partitionNames() {
+		return jdbc.queryForList("SELECT inhrelid::regclass::text FROM pg_inherits ORDER BY 1", Map.of(), String.class);
+	}
+
+	private static Map<String, Object> row(Object... pairs) {
+		Map<String, Object> row = new LinkedHashMap<>();
+		for (int i = 0; i < pairs.length; i += 2) {
+			row.put((String) pairs[i], pairs[i + 1]);
+		}
+		return row;
+	}
+}
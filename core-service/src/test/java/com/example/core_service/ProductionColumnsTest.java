@@ -0,0 +1,100 @@
+package com.example.core_service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProductionColumnsTest {
+
+	@Test
+	void shiftsAreIndexedById() {
+		ProductionColumns p = new ProductionColumns();
+		p.upsertShift(5, 19000, 3, 7);
+		p.upsertShift(5_000, 19001, 4, 8);
+
+		assertThat(p.hasShift(5)).isTrue();
+		assertThat(p.hasShift(5_000)).isTrue();
+		assertThat(p.hasShift(6)).isFalse();
+		assertThat(p.hasShift(0)).isFalse();
+		assertThat(p.hasShift(1_000_000)).isFalse();
+		assertThat(p.maxShiftId).isEqualTo(5_000);
+		assertThat(p.shiftDay[5_000]).isEqualTo(19001);
+		assertThat(p.shiftDeposit[5_000]).isEqualTo(4);
+		assertThat(p.shiftTeam[5_000]).isEqualTo(8);
+
+		p.removeShift(5);
+		p.removeShift(1_000_000);
+		assertThat(p.hasShift(5)).isFalse();
+	}
+
+	@Test
+	void productionCountFollowsInsertMoveAndRemove() {
+		ProductionColumns p = new ProductionColumns();
+		p.upsertShift(1, 19000, 1, 1);
+		p.upsertShift(2, 19001, 1, 1);
+
+		p.upsertProduction(10, 1, 3, 1_500, false);
+		p.upsertProduction(11, 1, 4, 2_500, true);
+		assertThat(p.shiftProductionCount[1]).isEqualTo(2);
+		assertThat(p.shiftProductionCount[2]).isZero();
+
+		// Перенос строки добычи на другую смену
+		p.upsertProduction(11, 2, 4, 2_500, true);
+		assertThat(p.size).isEqualTo(2);
+		assertThat(p.shiftProductionCount[1]).isEqualTo(1);
+		assertThat(p.shiftProductionCount[2]).isEqualTo(1);
+
+		// Правка без переноса счетчики не меняет
+		p.upsertProduction(11, 2, 5, 3_000, false);
+		assertThat(p.shiftProductionCount[2]).isEqualTo(1);
+
+		p.removeProduction(10);
+		p.removeProduction(10);
+		assertThat(p.size).isEqualTo(1);
+		assertThat(p.shiftProductionCount[1]).isZero();
+		assertThat(p.shiftProductionCount[2]).isEqualTo(1);
+	}
+
+	@Test
+	void removeMovesLastRowWithAllColumns() {
+		ProductionColumns p = new ProductionColumns();
+		p.upsertShift(1, 19000, 1, 1);
+		p.upsertShift(2, 19001, 1, 1);
+		p.upsertProduction(10, 1, 3, 100, false);
+		p.upsertProduction(11, 1, 4, 200, false);
+		p.upsertProduction(12, 2, 5, -300, true);
+
+		p.removeProduction(10);
+
+		assertThat(p.size).isEqualTo(2);
+		assertThat(p.ids[0]).isEqualTo(12);
+		assertThat(p.shift[0]).isEqualTo(2);
+		assertThat(p.mineral[0]).isEqualTo(5);
+		assertThat(p.tons[0]).isEqualTo(-300);
+		assertThat(p.damaged[0]).isTrue();
+		assertThat(p.ids[1]).isEqualTo(11);
+		assertThat(p.damaged[1]).isFalse();
+
+		// Перенесенная строка находится по id: повторная вставка обновляет ее, а не добавляет
+		p.upsertProduction(12, 2, 6, 400, false);
+		assertThat(p.size).isEqualTo(2);
+		assertThat(p.mineral[0]).isEqualTo(6);
+		assertThat(p.damaged[0]).isFalse();
+		assertThat(p.shiftProductionCount[2]).isEqualTo(1);
+	}
+
+	@Test
+	void productionForUnseenShiftGrowsShiftArrays() {
+		ProductionColumns p = new ProductionColumns();
+		for (int id = 1; id <= 3_000; id++) {
+			p.upsertProduction(id, id * 3, 1, id, id % 2 == 0);
+		}
+
+		assertThat(p.size).isEqualTo(3_000);
+		assertThat(p.shiftProductionCount[9_000]).isEqualTo(1);
+		assertThat(p.hasShift(9_000)).isFalse();
+
+		p.upsertShift(9_000, 19000, 1, 1);
+		assertThat(p.shiftProductionCount[9_000]).isEqualTo(1);
+	}
+}
@@ -0,0 +1,139 @@
+package com.example.core_service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class QueryGuardTest {
+
+	private SimpleMeterRegistry meters;
+	private QueryGuard guard;
+
+	@BeforeEach
+	void setUp() {
+		meters = new SimpleMeterRegistry();
+		guard = new QueryGuard(meters);
+		ReflectionTestUtils.setField(guard, "pointSeconds", 2);
+		ReflectionTestUtils.setField(guard, "reportSeconds", 60);
+	}
+
+	@Test
+	void statementTimeoutCountsAsTimeout() {
+		QueryGuard.Query<?> query = query(QueryGuard.Route.REPORT, () -> {
+			throw canceled();
+		});
+
+		assertThatThrownBy(query::call).isInstanceOf(QueryTimeoutException.class);
+		assertThat(count("db.query.timeouts", "report")).isEqualTo(1);
+		assertThat(meters.find("db.query.cancellations").counters()).isEmpty();
+	}
+
+	@Test
+	void ownCancelCountsAsCancellationOnly() throws Exception {
+		QueryGuard.Query<?> query = query(QueryGuard.Route.REPORT, () -> {
+			QueryGuard.current().cancel("client-disconnect");
+			throw canceled();
+		});
+
+		assertThat(query.call()).isNull();
+		assertThat(meters.find("db.query.timeouts").counters()).isEmpty();
+		Counter cancellations = meters.find("db.query.cancellations")
+				.tags("route", "report", "reason", "client-disconnect").counter();
+		assertThat(cancellations).isNotNull();
+		assertThat(cancellations.count()).isEqualTo(1);
+	}
+
+	@Test
+	void otherErrorsAreNotCounted() {
+		QueryGuard.Query<?> query = query(QueryGuard.Route.REPORT, () -> {
+			throw new DataIntegrityViolationException("boom", new SQLException("boom", "23505"));
+		});
+
+		assertThatThrownBy(query::call).isInstanceOf(DataIntegrityViolationException.class);
+		assertThat(meters.getMeters()).isEmpty();
+	}
+
+	@Test
+	void registerSetsRouteTimeoutAndCancelCancelsStatement() throws Exception {
+		Statement statement = mock(Statement.class);
+		QueryGuard.Query<?> query = query(QueryGuard.Route.REPORT, List::of);
+
+		query.register(statement);
+		query.cancel("request-timeout");
+		query.cancel("abandoned");
+
+		verify(statement).setQueryTimeout(60);
+		verify(statement).cancel();
+		assertThat(count("db.query.cancellations", "report")).isEqualTo(1);
+	}
+
+	@Test
+	void registerAfterCancelFailsWithoutTouchingStatement() throws Exception {
+		Statement statement = mock(Statement.class);
+		QueryGuard.Query<?> query = query(QueryGuard.Route.REPORT, List::of);
+
+		query.cancel("client-disconnect");
+
+		assertThatThrownBy(() -> query.register(statement))
+				.isInstanceOf(SQLException.class)
+				.extracting(e -> ((SQLException) e).getSQLState()).isEqualTo("57014");
+		verify(statement, never()).setQueryTimeout(60);
+		verify(statement, never()).cancel();
+	}
+
+	@Test
+	void cancelAfterCompletionIsIgnored() throws Exception {
+		QueryGuard.Query<?> query = query(QueryGuard.Route.REPORT, () -> List.of(1));
+
+		assertThat(query.call()).isEqualTo(List.of(1));
+		query.cancel("abandoned");
+
+		assertThat(meters.getMeters()).isEmpty();
+		assertThat(QueryGuard.current()).isNull();
+	}
+
+	@Test
+	void runAppliesPointTimeout() throws Exception {
+		Statement statement = mock(Statement.class);
+
+		guard.run(QueryGuard.Route.POINT, () -> {
+			try {
+				QueryGuard.current().register(statement);
+			} catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		});
+
+		verify(statement).setQueryTimeout(2);
+		assertThat(QueryGuard.current()).isNull();
+	}
+
+	private QueryGuard.Query<?> query(QueryGuard.Route route, Supplier<?> work) {
+		return (QueryGuard.Query<?>) guard.callable(route, work);
+	}
+
+	private double count(String name, String route) {
+		return meters.find(name).tag("route", route).counters().stream().mapToDouble(Counter::count).sum();
+	}
+
+	// Так Postgres завершает запрос и по statement timeout, и по Statement.cancel()
+	private static QueryTimeoutException canceled() {
+		return new QueryTimeoutException("canceled", new SQLException("canceling statement", "57014"));
+	}
+}
@@ -0,0 +1,85 @@
+package com.example.core_service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SalesColumnsTest {
+
+	@Test
+	void upsertAppendsNewIdsAndUpdatesExistingInPlace() {
+		SalesColumns s = new SalesColumns();
+		s.upsert(1, 10, 100, 19000, 5_000, 12_345);
+		s.upsert(2, 11, 101, 19001, 6_000, 23_456);
+		s.upsert(1, 12, 102, 19002, -7_000, 34_567);
+
+		assertThat(s.size).isEqualTo(2);
+		assertRow(s, 0, 1, 12, 102, 19002, -7_000, 34_567);
+		assertRow(s, 1, 2, 11, 101, 19001, 6_000, 23_456);
+	}
+
+	@Test
+	void removeMovesLastRowIntoTheHole() {
+		SalesColumns s = new SalesColumns();
+		s.upsert(1, 10, 100, 19000, 1, 1);
+		s.upsert(2, 11, 101, 19001, 2, 2);
+		s.upsert(3, 12, 102, 19002, 3, 3);
+
+		s.remove(1);
+
+		assertThat(s.size).isEqualTo(2);
+		assertRow(s, 0, 3, 12, 102, 19002, 3, 3);
+		assertRow(s, 1, 2, 11, 101, 19001, 2, 2);
+
+		// Перенесенная строка по-прежнему находится по id
+		s.upsert(3, 20, 200, 20000, 30, 30);
+		assertThat(s.size).isEqualTo(2);
+		assertRow(s, 0, 3, 20, 200, 20000, 30, 30);
+	}
+
+	@Test
+	void removeOfLastAndUnknownIds() {
+		SalesColumns s = new SalesColumns();
+		s.upsert(1, 10, 100, 19000, 1, 1);
+		s.upsert(2, 11, 101, 19001, 2, 2);
+
+		s.remove(2);
+		s.remove(2);
+		s.remove(99_999);
+		s.remove(0);
+
+		assertThat(s.size).isEqualTo(1);
+		assertRow(s, 0, 1, 10, 100, 19000, 1, 1);
+
+		s.upsert(2, 11, 101, 19001, 2, 2);
+		assertThat(s.size).isEqualTo(2);
+		assertRow(s, 1, 2, 11, 101, 19001, 2, 2);
+	}
+
+	@Test
+	void growsPastInitialCapacityWithSparseIds() {
+		SalesColumns s = new SalesColumns();
+		for (int i = 1; i <= 5_000; i++) {
+			s.upsert(i * 7, i % 20, i, 19000 + i, i, i * 2L);
+		}
+		for (int i = 1; i <= 5_000; i += 2) {
+			s.remove(i * 7);
+		}
+
+		assertThat(s.size).isEqualTo(2_500);
+		for (int row = 0; row < s.size; row++) {
+			int i = s.ids[row] / 7;
+			assertThat(i % 2).isZero();
+			assertRow(s, row, i * 7, i % 20, i, 19000 + i, i, i * 2L);
+		}
+	}
+
+	private static void assertRow(SalesColumns s, int row, int id, int mineral, int buyer, int day, long tons, long price) {
+		assertThat(s.ids[row]).isEqualTo(id);
+		assertThat(s.mineral[row]).isEqualTo(mineral);
+		assertThat(s.buyer[row]).isEqualTo(buyer);
+		assertThat(s.day[row]).isEqualTo(day);
+		assertThat(s.tons[row]).isEqualTo(tons);
+		assertThat(s.price[row]).isEqualTo(price);
+	}
+}
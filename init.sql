@@ -92,36 +92,62 @@ CREATE TABLE IF NOT EXISTS "mining_teams" (
   PRIMARY KEY("id")
 );
 
+-- Таблицы фактов секционированы по месяцам (ключ секционирования входит в PK).
+-- Секции создаются заранее core-service (PartitionManager), здесь - только под тестовые данные.
+-- shift_production хранит копию shift_date смены, чтобы секционироваться так же, как work_shifts.
 CREATE TABLE IF NOT EXISTS "work_shifts" (
-  "id" SERIAL NOT NULL UNIQUE,
+  "id" SERIAL NOT NULL,
   "mining_team_id" INTEGER NOT NULL,
   "ore_deposit_id" INTEGER NOT NULL,
   "shift_date" DATE NOT NULL,
   "start_time" TIME NOT NULL,
   "end_time" TIME NOT NULL,
-  PRIMARY KEY("id")
-);
+  PRIMARY KEY("id", "shift_date")
+) PARTITION BY RANGE ("shift_date");
 
 CREATE TABLE IF NOT EXISTS "shift_production" (
-  "id" SERIAL NOT NULL UNIQUE,
+  "id" SERIAL NOT NULL,
   "shift_id" INTEGER NOT NULL,
+  "shift_date" DATE NOT NULL,
   "mineral_id" INTEGER NOT NULL,
   "tons_of_ore" NUMERIC NOT NULL,
   "equipment_damaged" BOOLEAN NOT NULL,
   "notes" TEXT,
-  PRIMARY KEY("id")
-);
+  PRIMARY KEY("id", "shift_date")
+) PARTITION BY RANGE ("shift_date");
 
 CREATE TABLE IF NOT EXISTS "sales_to_companies" (
-  "id" SERIAL NOT NULL UNIQUE,
+  "id" SERIAL NOT NULL,
   "owner_id" INTEGER NOT NULL,
   "buyer_id" INTEGER NOT NULL,
   "mineral_id" INTEGER NOT NULL,
   "sale_date" DATE NOT NULL,
   "sold_tons" NUMERIC NOT NULL,
   "sale_price_per_ton" NUMERIC NOT NULL,
-  PRIMARY KEY("id")
-);
+  PRIMARY KEY("id", "sale_date")
+) PARTITION BY RANGE ("sale_date");
+
+-- buyer-statistics за период: покупатель без продаж проверяется по индексу, а не просмотром всех секций
+CREATE INDEX IF NOT EXISTS "sales_to_companies_buyer_id_idx" ON "sales_to_companies" ("buyer_id");
+
+-- Месячные секции: два года назад (диапазон тестовых данных) и три месяца вперед
+DO $$
+DECLARE
+    m DATE;
+    t TEXT;
+BEGIN
+    FOR m IN SELECT generate_series(date_trunc('month', CURRENT_DATE - INTERVAL '2 years'),
+                                    date_trunc('month', CURRENT_DATE + INTERVAL '3 months'),
+                                    INTERVAL '1 month')::date
+    LOOP
+        FOREACH t IN ARRAY ARRAY['work_shifts', 'shift_production', 'sales_to_companies']
+        LOOP
+            EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                           t || '_p' || to_char(m, 'YYYYMM'), t, m, (m + INTERVAL '1 month')::date);
+        END LOOP;
+    END LOOP;
+END
+$$;
 
 -- Добавление внешних ключей
 ALTER TABLE "deposit_owner"
@@ -156,9 +182,10 @@ ALTER TABLE "work_shifts"
 ADD FOREIGN KEY("ore_deposit_id") REFERENCES "ore_deposits"("id")
 ON UPDATE NO ACTION ON DELETE NO ACTION;
 
+-- Составной ключ: перенос смены на другую дату переносит и ее добычу в нужную секцию
 ALTER TABLE "shift_production"
-ADD FOREIGN KEY("shift_id") REFERENCES "work_shifts"("id")
-ON UPDATE NO ACTION ON DELETE NO ACTION;
+ADD FOREIGN KEY("shift_id", "shift_date") REFERENCES "work_shifts"("id", "shift_date")
+ON UPDATE CASCADE ON DELETE NO ACTION;
 
 ALTER TABLE "shift_production"
 ADD FOREIGN KEY("mineral_id") REFERENCES "minerals"("id")
@@ -294,14 +321,16 @@ SELECT
 FROM generate_series(1, 100) gs
 ON CONFLICT DO NOTHING;
 
-INSERT INTO shift_production (shift_id, mineral_id, tons_of_ore, equipment_damaged, notes)
+INSERT INTO shift_production (shift_id, shift_date, mineral_id, tons_of_ore, equipment_damaged, notes)
 SELECT 
-    CEIL(100 * random()),
+    ws.id,
+    ws.shift_date,
     CEIL(20 * random()),
     random() * 500 + 50,
     random() > 0.9,
     CASE WHEN random() > 0.7 THEN 'Примечание: ' || (array['Плановые работы','Высокая производительность','Незначительные неисправности','Превышение плана','Обнаружены новые жилы'])[floor(random()*5+1)] ELSE NULL END
-FROM generate_series(1, 100) gs
+FROM (SELECT CEIL(100 * random())::int AS shift_id FROM generate_series(1, 100) gs) r
+JOIN work_shifts ws ON ws.id = r.shift_id
 ON CONFLICT DO NOTHING;
 
 INSERT INTO sales_to_companies (owner_id, buyer_id, mineral_id, sale_date, sold_tons, sale_price_per_ton)
@@ -382,10 +411,11 @@ SELECT
     CASE WHEN sp.equipment_damaged THEN 'Да' ELSE 'Нет' END AS equipment_damage,
     sp.notes
 FROM shift_production sp
-JOIN work_shifts ws ON sp.shift_id = ws.id
+JOIN work_shifts ws ON sp.shift_id = ws.id AND sp.shift_date = ws.shift_date
 JOIN ore_deposits od ON ws.ore_deposit_id = od.id
 JOIN mining_teams mt ON ws.mining_team_id = mt.id
-WHERE ws.shift_date >= CURRENT_DATE - INTERVAL '30 days'
+WHERE sp.shift_date >= CURRENT_DATE - 30
+  AND ws.shift_date >= CURRENT_DATE - 30
 ORDER BY ws.shift_date DESC;
 
 CREATE OR REPLACE VIEW view_team_performance AS
@@ -402,7 +432,7 @@ FROM mining_teams mt
 JOIN teams t ON mt.team_id = t.id
 JOIN team_names tn ON t.name_id = tn.id
 LEFT JOIN work_shifts ws ON mt.id = ws.mining_team_id
-LEFT JOIN shift_production sp ON ws.id = sp.shift_id
+LEFT JOIN shift_production sp ON ws.id = sp.shift_id AND ws.shift_date = sp.shift_date
 WHERE mt.is_active = true
 GROUP BY mt.id, tn.name, mt.foreman_name, mt.foreman_phone
 ORDER BY total_production DESC;
@@ -0,0 +1,39 @@
+#!/bin/bash
+# Сценарий нагрузочного прогона: сборка, генерация данных, несколько смесей запросов.
+#
+#   ./run-load.sh [SCALE] [DURATION_SECONDS]
+#
+# SCALE=10 дает 10M строк shift_production и sales_to_companies (см. Scale.java).
+# Стек должен быть поднят (docker compose up), postgres доступен на localhost:5433.
+# Переменные окружения: JDBC_URL, CORE_URL, GATEWAY_URL, THREADS, SKIP_GENERATE=1.
+set -euo pipefail
+
+cd "$(dirname "$0")"
+
+SCALE="${1:-1}"
+DURATION="${2:-60}"
+THREADS="${THREADS:-16}"
+JDBC_URL="${JDBC_URL:-jdbc:postgresql://localhost:5433/coredb}"
+CORE_URL="${CORE_URL:-http://localhost:8081/api}"
+GATEWAY_URL="${GATEWAY_URL:-http://localhost:8080}"
+
+sh ./mvnw -q clean package -DskipTests
+JAR=target/load-tools-0.0.1-SNAPSHOT.jar
+
+if [ "${SKIP_GENERATE:-0}" != "1" ]; then
+    java -jar "$JAR" generate --scale="$SCALE" --jdbc-url="$JDBC_URL"
+fi
+
+run_mix() {
+    echo
+    echo "=== $1 ==="
+    java -jar "$JAR" load --scale="$SCALE" --core-url="$CORE_URL" --gateway-url="$GATEWAY_URL" \
+        --threads="$THREADS" --duration="$DURATION" --warmup=10 --mix="$2"
+}
+
+# Обычная работа операторов: в основном справочники, фильтры и карточки записей
+run_mix "ui-browsing" "crud:30,table:25,view:15,filter:25,report:0,gateway:5"
+# Конец месяца: аналитика поверх таблиц фактов
+run_mix "reporting" "crud:5,table:5,view:30,filter:10,report:50,gateway:0"
+# Смесь по умолчанию
+run_mix "default" "crud:10,table:10,view:25,filter:20,report:30,gateway:5"
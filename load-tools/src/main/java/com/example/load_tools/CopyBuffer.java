@@ -0,0 +1,113 @@
+package com.example.load_tools;
+
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * Построчная запись в COPY ... FROM STDIN (текстовый формат) с буферизацией по ~1 МБ.
+ */
+class CopyBuffer implements AutoCloseable {
+
+    private static final int FLUSH_CHARS = 1 << 20;
+
+    private final CopyIn copy;
+    private final StringBuilder buffer = new StringBuilder(FLUSH_CHARS + 4096);
+    private boolean firstField = true;
+
+    CopyBuffer(CopyManager copyManager, String table, String columns) throws SQLException {
+        this.copy = copyManager.copyIn("COPY " + table + " (" + columns + ") FROM STDIN");
+    }
+
+    CopyBuffer add(long value) {
+        separator();
+        buffer.append(value);
+        return this;
+    }
+
+    CopyBuffer add(boolean value) {
+        separator();
+        buffer.append(value ? 't' : 'f');
+        return this;
+    }
+
+    // Число с фиксированной точкой: add(12345, 2) -> 123.45
+    CopyBuffer addScaled(long unscaled, int scale) {
+        separator();
+        if (unscaled < 0) {
+            buffer.append('-');
+            unscaled = -unscaled;
+        }
+        long divisor = 1;
+        for (int i = 0; i < scale; i++) {
+            divisor *= 10;
+        }
+        buffer.append(unscaled / divisor);
+        if (scale > 0) {
+            String fraction = Long.toString(unscaled % divisor);
+            buffer.append('.');
+            for (int i = fraction.length(); i < scale; i++) {
+                buffer.append('0');
+            }
+            buffer.append(fraction);
+        }
+        return this;
+    }
+
+    CopyBuffer add(String value) {
+        separator();
+        if (value == null) {
+            buffer.append("\\N");
+            return this;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> buffer.append("\\\\");
+                case '\t' -> buffer.append("\\t");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                default -> buffer.append(c);
+            }
+        }
+        return this;
+    }
+
+    void endRow() throws SQLException {
+        buffer.append('\n');
+        firstField = true;
+        if (buffer.length() >= FLUSH_CHARS) {
+            flush();
+        }
+    }
+
+    long finish() throws SQLException {
+        flush();
+        return copy.endCopy();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (copy.isActive()) {
+            copy.cancelCopy();
+        }
+    }
+
+    private void separator() {
+        if (!firstField) {
+            buffer.append('\t');
+        }
+        firstField = false;
+    }
+
+    private void flush() throws SQLException {
+        if (buffer.length() == 0) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+}
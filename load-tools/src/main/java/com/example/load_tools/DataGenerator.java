@@ -0,0 +1,364 @@
+package com.example.load_tools;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Генератор ссылочно-согласованных данных для всех 12 таблиц init.sql.
+ * Таблицы очищаются (TRUNCATE ... RESTART IDENTITY) и заполняются через COPY,
+ * id проставляются явно, после загрузки последовательности сдвигаются за максимум.
+ * Все в одной транзакции: снаружи (в т.ч. аналитическому движку core-service) видны
+ * либо старые данные, либо уже полностью загруженные новые.
+ */
+public class DataGenerator {
+
+    private static final String[] FIRST_NAMES = {
+            "Александр", "Алексей", "Андрей", "Антон", "Артем", "Борис", "Вадим", "Валентин", "Валерий",
+            "Виктор", "Владимир", "Дмитрий", "Евгений", "Иван", "Игорь", "Кирилл", "Константин", "Максим",
+            "Михаил", "Никита", "Николай", "Олег", "Павел", "Роман", "Сергей", "Юрий"
+    };
+    private static final String[] LAST_NAMES = {
+            "Иванов", "Петров", "Сидоров", "Смирнов", "Кузнецов", "Попов", "Васильев", "Михайлов", "Новиков",
+            "Федоров", "Морозов", "Волков", "Алексеев", "Лебедев", "Семенов", "Егоров", "Павлов", "Козлов",
+            "Степанов", "Николаев", "Орлов", "Андреев", "Макаров", "Никитин", "Захаров"
+    };
+    private static final String[] COMPANY_FORMS = {"ООО", "ЗАО", "АО", "ПАО"};
+    private static final String[] COMPANY_ROOTS = {
+            "Горный", "Рудный", "Металл", "Урал", "Сибирь", "Базальт", "Гранит", "Шахтный", "Карьер", "Геолог"
+    };
+    private static final String[] COMPANY_SUFFIXES = {"Холдинг", "Групп", "Компания", "Трест", "Инвест", "Пром"};
+    private static final String[] DEPOSIT_SIDES = {"Северный", "Южный", "Западный", "Восточный", "Центральный", "Новый", "Старый"};
+    private static final String[] DEPOSIT_KINDS = {"рудник", "прииск", "карьер", "шахта", "месторождение"};
+    private static final String[] STATUSES = {"разрабатывается", "консервация", "планируется", "закрыто"};
+    private static final String[] SETTLEMENTS = {"Горный", "Рудный", "Шахтерский", "Северный", "Южный"};
+    private static final String[] TEAM_WORDS = {
+            "Альфа", "Бета", "Гамма", "Дельта", "Эпсилон", "Зета", "Эта", "Тета", "Йота", "Каппа",
+            "Северная", "Южная", "Западная", "Восточная", "Горная", "Рудная", "Шахтная"
+    };
+    private static final String[] NOTES = {
+            "Плановые работы", "Высокая производительность", "Незначительные неисправности",
+            "Превышение плана", "Обнаружены новые жилы"
+    };
+    private static final String[] MINERALS = {
+            "Золото", "Медь", "Железо", "Алмазы", "Уран", "Серебро", "Платина", "Никель", "Свинец", "Цинк",
+            "Олово", "Вольфрам", "Молибден", "Кобальт", "Хром", "Марганец", "Титан", "Ванадий", "Бериллий", "Литий"
+    };
+
+    private static final String[] PARTITIONED = {"work_shifts", "shift_production", "sales_to_companies"};
+
+    private final String jdbcUrl;
+    private final String user;
+    private final String password;
+    private final Scale scale;
+    private final int years;
+    private final SplittableRandom random;
+
+    private final LocalDate today = LocalDate.now();
+    private LocalDate firstDate;
+    private int days;
+
+    public DataGenerator(Map<String, String> options) {
+        this.jdbcUrl = options.getOrDefault("jdbc-url", "jdbc:postgresql://localhost:5433/coredb");
+        this.user = options.getOrDefault("user", "coreuser");
+        this.password = options.getOrDefault("password", "corepass");
+        this.scale = new Scale(Double.parseDouble(options.getOrDefault("scale", "1")));
+        this.years = Integer.parseInt(options.getOrDefault("years", "2"));
+        this.random = new SplittableRandom(Long.parseLong(options.getOrDefault("seed", "42")));
+    }
+
+    public void run() throws SQLException {
+        firstDate = today.minusYears(years);
+        days = (int) (today.toEpochDay() - firstDate.toEpochDay()) + 1;
+
+        System.out.printf("Generating scale factor %s into %s (dates %s .. %s)%n", scale.getFactor(), jdbcUrl, firstDate, today);
+        long started = System.nanoTime();
+
+        try (Connection conn = DriverManager.getConnection(jdbcUrl, user, password)) {
+            CopyManager copy = conn.unwrap(PGConnection.class).getCopyAPI();
+            conn.setAutoCommit(false);
+
+            truncate(conn);
+            ensurePartitions(conn);
+
+            timed("minerals", () -> loadMinerals(copy));
+            timed("ore_deposits", () -> loadOreDeposits(copy));
+            timed("buyers_companies", () -> loadBuyers(copy));
+            timed("deposit_owner", () -> loadDepositOwners(copy));
+            timed("reserves", () -> loadReserves(copy));
+            timed("miners", () -> loadMiners(copy));
+            timed("team_names", () -> loadTeamNames(copy));
+            timed("teams", () -> loadTeams(copy));
+            timed("mining_teams", () -> loadMiningTeams(copy));
+            int[] shiftDays = new int[scale.workShifts()];
+            timed("work_shifts", () -> loadWorkShifts(copy, shiftDays));
+            boolean productionHasDate = hasColumn(conn, "shift_production", "shift_date");
+            timed("shift_production", () -> loadShiftProduction(copy, shiftDays, productionHasDate));
+            timed("sales_to_companies", () -> loadSales(copy));
+
+            resetSequences(conn);
+            conn.commit();
+            // ANALYZE - после фиксации, чтобы статистика была по видимым данным
+            conn.setAutoCommit(true);
+            try (Statement st = conn.createStatement()) {
+                st.execute("ANALYZE");
+            }
+        }
+
+        System.out.printf("Done in %.1f s%n", (System.nanoTime() - started) / 1e9);
+    }
+
+    // --- Таблицы ---
+
+    private long loadMinerals(CopyManager copy) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "minerals", "id, name")) {
+            for (int id = 1; id <= Scale.MINERALS; id++) {
+                out.add(id).add(MINERALS[id - 1]).endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    private long loadOreDeposits(CopyManager copy) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "ore_deposits",
+                "id, name, status, discovery_year, latitude, longitude, has_railroad, has_power_supply, nearby_settlement")) {
+            for (int id = 1; id <= scale.oreDeposits(); id++) {
+                out.add(id)
+                        .add(pick(DEPOSIT_SIDES) + " " + pick(DEPOSIT_KINDS) + " " + id)
+                        .add(pick(STATUSES))
+                        .add(1950 + random.nextInt(74))
+                        .addScaled(45_000_000L + random.nextLong(40_000_000L), 6)
+                        .addScaled(30_000_000L + random.nextLong(100_000_000L), 6)
+                        .add(random.nextInt(10) >= 3)
+                        .add(random.nextInt(10) >= 2)
+                        .add("Поселок " + pick(SETTLEMENTS))
+                        .endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    private long loadBuyers(CopyManager copy) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "buyers_companies",
+                "id, name, license_number, contact_name, contact_phone")) {
+            for (int id = 1; id <= scale.buyers(); id++) {
+                out.add(id).add(company() + " " + id).add(1000L + id).add(person()).add(phone()).endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    private long loadDepositOwners(CopyManager copy) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "deposit_owner",
+                "id, ore_deposit_id, name, acquisition_year, expiration_year, contact_name, contact_phone")) {
+            for (int id = 1; id <= scale.depositOwners(); id++) {
+                out.add(id)
+                        .add(1 + random.nextInt(scale.oreDeposits()))
+                        .add(company() + " " + id)
+                        .add(2000 + random.nextInt(24))
+                        .add(2024 + random.nextInt(27))
+                        .add(person())
+                        .add(phone())
+                        .endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    private long loadReserves(CopyManager copy) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "reserves",
+                "id, ore_deposit_id, mineral_id, absolute_volume, is_confirmed")) {
+            for (int id = 1; id <= scale.reserves(); id++) {
+                out.add(id)
+                        .add(1 + random.nextInt(scale.oreDeposits()))
+                        .add(1 + random.nextInt(Scale.MINERALS))
+                        .addScaled(1_000_000L + random.nextLong(100_000_000L), 2)
+                        .add(random.nextInt(10) >= 2)
+                        .endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    private long loadMiners(CopyManager copy) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "miners", "id, name, phone")) {
+            for (int id = 1; id <= scale.miners(); id++) {
+                out.add(id).add(person()).add(phone()).endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    private long loadTeamNames(CopyManager copy) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "team_names", "id, name")) {
+            for (int id = 1; id <= scale.teamNames(); id++) {
+                out.add(id).add("Бригада " + TEAM_WORDS[(id - 1) % TEAM_WORDS.length] + " " + id).endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    private long loadTeams(CopyManager copy) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "teams", "id, name_id, miners_id")) {
+            for (int id = 1; id <= scale.teams(); id++) {
+                out.add(id).add(1 + random.nextInt(scale.teamNames())).add(1 + random.nextInt(scale.miners())).endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    private long loadMiningTeams(CopyManager copy) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "mining_teams",
+                "id, team_id, foreman_name, foreman_phone, is_active")) {
+            for (int id = 1; id <= scale.miningTeams(); id++) {
+                out.add(id).add(1 + random.nextInt(scale.teams())).add(person()).add(phone()).add(random.nextInt(10) != 0).endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    // Дата каждой смены запоминается: shift_production должна ссылаться на пару (shift_id, shift_date)
+    private long loadWorkShifts(CopyManager copy, int[] shiftDays) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "work_shifts",
+                "id, mining_team_id, ore_deposit_id, shift_date, start_time, end_time")) {
+            for (int id = 1; id <= shiftDays.length; id++) {
+                int day = (int) firstDate.toEpochDay() + random.nextInt(days);
+                shiftDays[id - 1] = day;
+                out.add(id)
+                        .add(1 + random.nextInt(scale.miningTeams()))
+                        .add(1 + random.nextInt(scale.oreDeposits()))
+                        .add(LocalDate.ofEpochDay(day).toString())
+                        .add(LocalTime.ofSecondOfDay(6 * 3600 + random.nextInt(7200)).toString())
+                        .add(LocalTime.ofSecondOfDay(18 * 3600 + random.nextInt(7200)).toString())
+                        .endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    private long loadShiftProduction(CopyManager copy, int[] shiftDays, boolean withShiftDate) throws SQLException {
+        String columns = withShiftDate
+                ? "id, shift_id, shift_date, mineral_id, tons_of_ore, equipment_damaged, notes"
+                : "id, shift_id, mineral_id, tons_of_ore, equipment_damaged, notes";
+        try (CopyBuffer out = new CopyBuffer(copy, "shift_production", columns)) {
+            for (int id = 1; id <= scale.shiftProduction(); id++) {
+                int shift = 1 + random.nextInt(shiftDays.length);
+                out.add(id).add(shift);
+                if (withShiftDate) {
+                    out.add(LocalDate.ofEpochDay(shiftDays[shift - 1]).toString());
+                }
+                out.add(1 + random.nextInt(Scale.MINERALS))
+                        .addScaled(50_000L + random.nextLong(500_000L), 3)
+                        .add(random.nextInt(10) == 0)
+                        .add(random.nextInt(10) < 3 ? "Примечание: " + pick(NOTES) : null)
+                        .endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    private long loadSales(CopyManager copy) throws SQLException {
+        try (CopyBuffer out = new CopyBuffer(copy, "sales_to_companies",
+                "id, owner_id, buyer_id, mineral_id, sale_date, sold_tons, sale_price_per_ton")) {
+            for (int id = 1; id <= scale.sales(); id++) {
+                out.add(id)
+                        .add(1 + random.nextInt(scale.depositOwners()))
+                        .add(1 + random.nextInt(scale.buyers()))
+                        .add(1 + random.nextInt(Scale.MINERALS))
+                        .add(firstDate.plusDays(random.nextInt(days)).toString())
+                        .addScaled(100_000L + random.nextLong(1_000_000L), 3)
+                        .addScaled(500_000L + random.nextLong(5_000_000L), 2)
+                        .endRow();
+            }
+            return out.finish();
+        }
+    }
+
+    // --- Служебное ---
+
+    private void truncate(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("""
+                    TRUNCATE sales_to_companies, shift_production, work_shifts, mining_teams, teams, team_names,
+                             miners, reserves, deposit_owner, buyers_companies, minerals, ore_deposits
+                    RESTART IDENTITY CASCADE
+                    """);
+        }
+    }
+
+    // Месячные секции под весь диапазон дат (схема init.sql с секционированием, см. PartitionManager)
+    private void ensurePartitions(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            for (String table : PARTITIONED) {
+                try (ResultSet rs = st.executeQuery(
+                        "SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('" + table + "')")) {
+                    if (!rs.next()) {
+                        continue;
+                    }
+                }
+                for (YearMonth m = YearMonth.from(firstDate); !m.isAfter(YearMonth.from(today)); m = m.plusMonths(1)) {
+                    st.execute(String.format("CREATE TABLE IF NOT EXISTS %s_p%04d%02d PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                            table, m.getYear(), m.getMonthValue(), table, m.atDay(1), m.plusMonths(1).atDay(1)));
+                }
+            }
+        }
+    }
+
+    private boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT 1 FROM information_schema.columns WHERE table_schema = current_schema()"
+                     + " AND table_name = '" + table + "' AND column_name = '" + column + "'")) {
+            return rs.next();
+        }
+    }
+
+    private void resetSequences(Connection conn) throws SQLException {
+        String[] tables = {
+                "minerals", "ore_deposits", "buyers_companies", "deposit_owner", "reserves", "miners",
+                "team_names", "teams", "mining_teams", "work_shifts", "shift_production", "sales_to_companies"
+        };
+        try (Statement st = conn.createStatement()) {
+            for (String table : tables) {
+                st.execute("SELECT setval(pg_get_serial_sequence('" + table + "', 'id'), "
+                        + "(SELECT COALESCE(MAX(id), 0) + 1 FROM " + table + "), false)");
+            }
+        }
+    }
+
+    private interface Load {
+        long run() throws SQLException;
+    }
+
+    private void timed(String table, Load load) throws SQLException {
+        long started = System.nanoTime();
+        long rows = load.run();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("  %-20s %,12d rows  %7.1f s  %,10.0f rows/s%n", table, rows, seconds, rows / Math.max(seconds, 1e-9));
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private String person() {
+        return pick(FIRST_NAMES) + " " + pick(LAST_NAMES);
+    }
+
+    private String company() {
+        return pick(COMPANY_FORMS) + " " + pick(COMPANY_ROOTS) + pick(COMPANY_SUFFIXES);
+    }
+
+    private String phone() {
+        return "+7" + (1_000_000_000L + random.nextLong(9_000_000_000L));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.load_tools;
+
+import java.util.Arrays;
+
+/**
+ * Накопитель задержек одного эндпоинта (в наносекундах) и подсчет перцентилей.
+ */
+class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int count;
+    private int errors;
+
+    synchronized void record(long nanos, boolean ok) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+        if (!ok) {
+            errors++;
+        }
+    }
+
+    synchronized Snapshot snapshot() {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return new Snapshot(sorted, errors);
+    }
+
+    record Snapshot(long[] sorted, int errors) {
+
+        int count() {
+            return sorted.length;
+        }
+
+        // Перцентиль методом ближайшего ранга, в миллисекундах
+        double percentileMillis(double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+            return sorted[Math.min(sorted.length, Math.max(rank, 1)) - 1] / 1e6;
+        }
+
+        double maxMillis() {
+            return sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6;
+        }
+    }
+}
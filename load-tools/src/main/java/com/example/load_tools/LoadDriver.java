@@ -0,0 +1,359 @@
+package com.example.load_tools;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Нагрузочный драйвер: N потоков в замкнутом цикле воспроизводят смесь запросов UI
+ * (CRUD, чтение таблиц, представления, фильтры по внешнему ключу, отчеты) к core-service
+ * и api-gateway, затем печатают пропускную способность и p50/p99/p999 по каждому эндпоинту.
+ * Диапазоны id берутся из того же масштабного коэффициента, что и у генератора.
+ */
+public class LoadDriver {
+
+    private static final String DEFAULT_MIX = "crud:10,table:10,view:25,filter:20,report:30,gateway:5";
+
+    private static final String[] VIEWS = {
+            "view_deposits_summary", "view_reserves_details", "view_sales_report",
+            "view_production_daily", "view_team_performance", "view_mineral_prices"
+    };
+
+    private static final String[] REPORTS = {
+            "monthly-production", "sales-by-mineral", "reserves-status", "infrastructure-report",
+            "team-efficiency", "buyer-statistics", "discovery-timeline", "equipment-damage"
+    };
+
+    // Справочники, которые UI загружает целиком
+    private static final String[] SMALL_TABLES = {
+            "minerals", "ore_deposits", "deposit_owner", "reserves", "miners", "team_names", "teams", "mining_teams"
+    };
+
+    private static final Pattern ID_PATTERN = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+
+    private final String coreUrl;
+    private final String gatewayUrl;
+    private final String gatewayUser;
+    private final String gatewayPassword;
+    private final int threads;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final long seed;
+    private final Scale scale;
+    private final Map<String, Integer> mix = new LinkedHashMap<>();
+    private final int totalWeight;
+
+    // Таблица -> количество строк (для точечных запросов по id)
+    private final Map<String, Integer> tableSizes = new LinkedHashMap<>();
+    // {таблица, колонка внешнего ключа, таблица-родитель}
+    private final String[][] filters = {
+            {"shift_production", "shift_id", "work_shifts"},
+            {"sales_to_companies", "buyer_id", "buyers_companies"},
+            {"work_shifts", "mining_team_id", "mining_teams"},
+            {"reserves", "ore_deposit_id", "ore_deposits"},
+            {"deposit_owner", "ore_deposit_id", "ore_deposits"}
+    };
+
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+
+    private long warmupEndsAt;
+    private long endsAt;
+
+    public LoadDriver(Map<String, String> options) {
+        this.coreUrl = options.getOrDefault("core-url", "http://localhost:8081/api");
+        this.gatewayUrl = options.getOrDefault("gateway-url", "http://localhost:8080");
+        this.gatewayUser = options.getOrDefault("gateway-user", "user");
+        this.gatewayPassword = options.getOrDefault("gateway-password", "user");
+        this.threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        this.durationSeconds = Integer.parseInt(options.getOrDefault("duration", "60"));
+        this.warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        this.seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        this.scale = new Scale(Double.parseDouble(options.getOrDefault("scale", "1")));
+
+        int total = 0;
+        for (String part : options.getOrDefault("mix", DEFAULT_MIX).split(",")) {
+            String[] kv = part.trim().split(":");
+            if (kv.length != 2 || !List.of("crud", "table", "view", "filter", "report", "gateway").contains(kv[0])) {
+                throw new IllegalArgumentException("Invalid mix entry: " + part);
+            }
+            int weight = Integer.parseInt(kv[1]);
+            mix.put(kv[0], weight);
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Mix weights must add up to a positive number");
+        }
+        this.totalWeight = total;
+
+        tableSizes.put("minerals", Scale.MINERALS);
+        tableSizes.put("ore_deposits", scale.oreDeposits());
+        tableSizes.put("buyers_companies", scale.buyers());
+        tableSizes.put("deposit_owner", scale.depositOwners());
+        tableSizes.put("reserves", scale.reserves());
+        tableSizes.put("miners", scale.miners());
+        tableSizes.put("team_names", scale.teamNames());
+        tableSizes.put("teams", scale.teams());
+        tableSizes.put("mining_teams", scale.miningTeams());
+        tableSizes.put("work_shifts", scale.workShifts());
+        tableSizes.put("shift_production", scale.shiftProduction());
+        tableSizes.put("sales_to_companies", scale.sales());
+    }
+
+    public void run() throws InterruptedException {
+        System.out.printf("Load: %d threads, %d s warmup + %d s measured, mix %s, scale %s%n",
+                threads, warmupSeconds, durationSeconds, mix, scale.getFactor());
+        System.out.printf("  core-service: %s%n  api-gateway:  %s%n", coreUrl, gatewayUrl);
+
+        long started = System.nanoTime();
+        warmupEndsAt = started + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        endsAt = warmupEndsAt + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(new SplittableRandom(seed + i));
+            pool.submit(worker::loop);
+        }
+        pool.shutdown();
+        if (!pool.awaitTermination(warmupSeconds + durationSeconds + 300L, TimeUnit.SECONDS)) {
+            pool.shutdownNow();
+        }
+
+        printReport();
+    }
+
+    private void printReport() {
+        Map<String, LatencyRecorder.Snapshot> snapshots = new TreeMap<>();
+        recorders.forEach((label, recorder) -> snapshots.put(label, recorder.snapshot()));
+
+        List<long[]> all = new ArrayList<>();
+        int totalErrors = 0;
+
+        System.out.println();
+        System.out.printf("%-62s %9s %7s %9s %9s %9s %9s %9s%n",
+                "Endpoint", "count", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (Map.Entry<String, LatencyRecorder.Snapshot> e : snapshots.entrySet()) {
+            printLine(e.getKey(), e.getValue());
+            all.add(e.getValue().sorted());
+            totalErrors += e.getValue().errors();
+        }
+
+        long[] merged = all.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        printLine("TOTAL", new LatencyRecorder.Snapshot(merged, totalErrors));
+    }
+
+    private void printLine(String label, LatencyRecorder.Snapshot s) {
+        System.out.printf("%-62s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                label, s.count(), s.errors(), s.count() / (double) durationSeconds,
+                s.percentileMillis(50), s.percentileMillis(99), s.percentileMillis(99.9), s.maxMillis());
+    }
+
+    private class Worker {
+
+        private final SplittableRandom random;
+        private final HttpClient client;
+        private boolean loggedIn;
+
+        Worker(SplittableRandom random) {
+            this.random = random;
+            // Свой клиент на поток: cookie сессии api-gateway у каждого "пользователя" свои
+            this.client = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .cookieHandler(new CookieManager())
+                    .build();
+        }
+
+        void loop() {
+            try {
+                while (System.nanoTime() < endsAt) {
+                    switch (pickOperation()) {
+                        case "crud" -> crud();
+                        case "table" -> table();
+                        case "view" -> view();
+                        case "filter" -> filter();
+                        case "report" -> report();
+                        case "gateway" -> gateway();
+                        default -> throw new IllegalStateException();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private String pickOperation() {
+            int r = random.nextInt(totalWeight);
+            for (Map.Entry<String, Integer> e : mix.entrySet()) {
+                r -= e.getValue();
+                if (r < 0) {
+                    return e.getKey();
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        // Точечные чтения по id, иногда полный цикл вставка/изменение/удаление продажи
+        private void crud() throws InterruptedException {
+            if (random.nextInt(5) != 0) {
+                List<String> tables = new ArrayList<>(tableSizes.keySet());
+                String table = tables.get(random.nextInt(tables.size()));
+                int id = 1 + random.nextInt(tableSizes.get(table));
+                call("GET /tables/{table}/{id}", get(coreUrl + "/tables/" + table + "/" + id));
+                return;
+            }
+
+            String body = call("POST /tables/sales_to_companies", json("POST", coreUrl + "/tables/sales_to_companies", saleJson()));
+            if (body == null) {
+                return;
+            }
+            Matcher m = ID_PATTERN.matcher(body);
+            if (!m.find()) {
+                return;
+            }
+            String url = coreUrl + "/tables/sales_to_companies/" + m.group(1);
+            call("PUT /tables/sales_to_companies/{id}", json("PUT", url, saleJson()));
+            call("DELETE /tables/sales_to_companies/{id}", HttpRequest.newBuilder(URI.create(url)).DELETE().build());
+        }
+
+        private void table() throws InterruptedException {
+            String table = SMALL_TABLES[random.nextInt(SMALL_TABLES.length)];
+            call("GET /tables/" + table, get(coreUrl + "/tables/" + table));
+        }
+
+        private void view() throws InterruptedException {
+            String view = VIEWS[random.nextInt(VIEWS.length)];
+            call("GET /views/" + view, get(coreUrl + "/views/" + view));
+        }
+
+        private void filter() throws InterruptedException {
+            String[] f = filters[random.nextInt(filters.length)];
+            int value = 1 + random.nextInt(tableSizes.get(f[2]));
+            call("GET /tables/" + f[0] + "/filter?column=" + f[1],
+                    get(coreUrl + "/tables/" + f[0] + "/filter?column=" + f[1] + "&value=" + value));
+        }
+
+        // Примерно 70% отчетов с фильтром (как из формы UI), остальные - за всю историю
+        private void report() throws InterruptedException {
+            String report = REPORTS[random.nextInt(REPORTS.length)];
+            boolean bounded = random.nextInt(10) < 7;
+            String query = "";
+
+            if (bounded) {
+                YearMonth month = YearMonth.now().minusMonths(random.nextInt(12));
+                LocalDate from = LocalDate.now().minusDays(30 + random.nextInt(335));
+                query = switch (report) {
+                    case "monthly-production", "team-efficiency" ->
+                            "?year=" + month.getYear() + "&month=" + month.getMonthValue();
+                    case "sales-by-mineral", "buyer-statistics", "equipment-damage" ->
+                            "?from=" + from + "&to=" + from.plusDays(30);
+                    case "reserves-status" -> "?isConfirmed=" + random.nextBoolean();
+                    case "infrastructure-report" ->
+                            "?q=" + URLEncoder.encode(random.nextBoolean() ? "Северный" : "Горный", StandardCharsets.UTF_8);
+                    case "discovery-timeline" -> "?from=1990&to=2010";
+                    default -> "";
+                };
+            }
+
+            call("GET /reports/" + report + (bounded ? " (filtered)" : ""), get(coreUrl + "/reports/" + report + query));
+        }
+
+        private void gateway() throws InterruptedException {
+            if (!loggedIn && !login()) {
+                return;
+            }
+            if (random.nextBoolean()) {
+                call("GET gateway /api/me", get(gatewayUrl + "/api/me"));
+            } else {
+                call("GET gateway /index.html", get(gatewayUrl + "/index.html"));
+            }
+        }
+
+        // Форма логина Spring Security: успех - редирект не на ?error
+        private boolean login() throws InterruptedException {
+            String form = "username=" + URLEncoder.encode(gatewayUser, StandardCharsets.UTF_8)
+                    + "&password=" + URLEncoder.encode(gatewayPassword, StandardCharsets.UTF_8);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(gatewayUrl + "/login"))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString(form))
+                    .build();
+            long started = System.nanoTime();
+            boolean ok;
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                ok = response.statusCode() == 302
+                        && !response.headers().firstValue("Location").orElse("").contains("error");
+            } catch (IOException e) {
+                ok = false;
+            }
+            record("POST gateway /login", started, ok);
+            loggedIn = ok;
+            return ok;
+        }
+
+        private String saleJson() {
+            LocalDate date = LocalDate.now().minusDays(random.nextInt(365));
+            return "{\"owner_id\": " + (1 + random.nextInt(scale.depositOwners()))
+                    + ", \"buyer_id\": " + (1 + random.nextInt(scale.buyers()))
+                    + ", \"mineral_id\": " + (1 + random.nextInt(Scale.MINERALS))
+                    + ", \"sale_date\": \"" + date + "\""
+                    + ", \"sold_tons\": " + (100 + random.nextInt(1000))
+                    + ", \"sale_price_per_ton\": " + (5000 + random.nextInt(50000)) + "}";
+        }
+
+        private HttpRequest get(String url) {
+            return HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(120)).GET().build();
+        }
+
+        private HttpRequest json(String method, String url, String body) {
+            return HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofSeconds(120))
+                    .header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        }
+
+        // Выполнить запрос и записать задержку; null при ошибке
+        private String call(String label, HttpRequest request) throws InterruptedException {
+            long started = System.nanoTime();
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                boolean ok = response.statusCode() < 400;
+                record(label, started, ok);
+                return ok ? response.body() : null;
+            } catch (IOException e) {
+                record(label, started, false);
+                return null;
+            }
+        }
+
+        // Запросы, начатые во время прогрева, не учитываются
+        private void record(String label, long started, boolean ok) {
+            if (started < warmupEndsAt) {
+                return;
+            }
+            recorders.computeIfAbsent(label, k -> new LatencyRecorder()).record(System.nanoTime() - started, ok);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.load_tools;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Точка входа:
+ *   java -jar load-tools.jar generate --scale=10 [--jdbc-url=... --user=... --password=... --years=2 --seed=42]
+ *   java -jar load-tools.jar load --scale=10 [--core-url=... --gateway-url=... --threads=16 --duration=60 --warmup=10
+ *                                             --mix=crud:10,table:10,view:25,filter:20,report:30,gateway:5]
+ */
+public class LoadToolsApplication {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+
+        Map<String, String> options = parseOptions(args);
+
+        switch (args[0]) {
+            case "generate" -> new DataGenerator(options).run();
+            case "load" -> new LoadDriver(options).run();
+            default -> usage();
+        }
+    }
+
+    // --key=value -> key/value, флаги без значения -> "true"
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    private static void usage() {
+        System.out.println("""
+                Usage:
+                  generate --scale=<SF>  Truncate all 12 tables and load SF-scaled data with COPY
+                      --jdbc-url=jdbc:postgresql://localhost:5433/coredb --user=coreuser --password=corepass
+                      --years=2 --seed=42
+                  load --scale=<SF>      Replay a request mix and print throughput and latency percentiles
+                      --core-url=http://localhost:8081/api --gateway-url=http://localhost:8080
+                      --gateway-user=user --gateway-password=user
+                      --threads=16 --duration=60 --warmup=10 --seed=42
+                      --mix=crud:10,table:10,view:25,filter:20,report:30,gateway:5
+
+                Row counts per scale factor 1 (minerals are fixed at 20):
+                  ore_deposits 100, deposit_owner 100, reserves 200, buyers_companies 1000,
+                  miners 100, team_names 15, teams 300, mining_teams 50,
+                  work_shifts 100000, shift_production 1000000, sales_to_companies 1000000
+                """);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.load_tools;
+
+/**
+ * Количество строк по таблицам для масштабного коэффициента.
+ * Используется и генератором (сколько вставить), и нагрузочным драйвером (диапазоны id).
+ */
+public class Scale {
+
+    public static final int MINERALS = 20;
+
+    private final double factor;
+
+    public Scale(double factor) {
+        if (factor <= 0) {
+            throw new IllegalArgumentException("Scale factor must be positive: " + factor);
+        }
+        this.factor = factor;
+    }
+
+    public double getFactor() { return factor; }
+
+    public int oreDeposits() { return scaled(100); }
+    public int depositOwners() { return scaled(100); }
+    public int reserves() { return scaled(200); }
+    public int buyers() { return scaled(1_000); }
+    public int miners() { return scaled(100); }
+    public int teamNames() { return scaled(15); }
+    public int teams() { return scaled(300); }
+    public int miningTeams() { return scaled(50); }
+    public int workShifts() { return scaled(100_000); }
+    public int shiftProduction() { return scaled(1_000_000); }
+    public int sales() { return scaled(1_000_000); }
+
+    private int scaled(long base) {
+        long rows = Math.round(base * factor);
+        if (rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Scale factor " + factor + " is too large (ids are INTEGER)");
+        }
+        return (int) Math.max(1, rows);
+    }
+}